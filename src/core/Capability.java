@@ -0,0 +1,10 @@
+package core;
+
+// Features a device, one of its attached components or one of its decorators can provide
+public enum Capability {
+    CAMERA,
+    TEMPERATURE_SENSOR,
+    HUMIDITY_SENSOR,
+    MOTION_SENSOR,
+    DIMMABLE
+}
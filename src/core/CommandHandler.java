@@ -0,0 +1,6 @@
+package core;
+
+// Handles one command type for a device; registered once in the device's dispatch table
+public interface CommandHandler {
+    void handle(DeviceCommand command);
+}
@@ -0,0 +1,97 @@
+package core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Opcodes for device actions. String actions are resolved to one of these once, together
+// with their already-parsed arguments (see DeviceCommand).
+public enum CommandType {
+    // Light
+    DIM(ArgumentKind.INT, true),
+    COLOR(ArgumentKind.TEXT, true),
+    // Fan
+    SET_SPEED(ArgumentKind.INT, true),
+    SET_OSCILLATE(ArgumentKind.BOOLEAN, true),
+    // Air conditioner (SET_MODE is shared with the camera)
+    SET_TEMP(ArgumentKind.INT, true),
+    SET_MODE(ArgumentKind.TEXT, true),
+    SET_FAN(ArgumentKind.INT, true),
+    // Camera (SIMULATE_MOTION is shared with the motion sensor)
+    SIMULATE_MOTION(ArgumentKind.BOOLEAN, false),
+    TAKE_PHOTO(ArgumentKind.NONE, false),
+    START_RECORDING(ArgumentKind.NONE, false),
+    STOP_RECORDING(ArgumentKind.NONE, false),
+    // Temperature sensor
+    READ_TEMPERATURE(ArgumentKind.NONE, false),
+    SET_TEMPERATURE(ArgumentKind.DOUBLE, false),
+    SET_THRESHOLD(ArgumentKind.DOUBLE, true),
+    // Humidity sensor
+    READ_HUMIDITY(ArgumentKind.NONE, false),
+    SET_HUMIDITY(ArgumentKind.DOUBLE, false),
+    SET_HUMIDITY_THRESHOLDS(ArgumentKind.DOUBLE_PAIR, true),
+    // Motion sensor
+    DETECT_MOTION(ArgumentKind.NONE, false),
+    SET_SENSITIVITY(ArgumentKind.INT, true),
+    GET_MOTION_EVENTS(ArgumentKind.NONE, false),
+    // Any other action: handed to the device's control strategy with the raw parameters
+    STRATEGY(ArgumentKind.NONE, false);
+
+    public enum ArgumentKind {
+        NONE(0),
+        INT(1),
+        DOUBLE(1),
+        DOUBLE_PAIR(2),
+        BOOLEAN(1),
+        TEXT(1);
+
+        private final int requiredParams;
+
+        ArgumentKind(int requiredParams) {
+            this.requiredParams = requiredParams;
+        }
+
+        public int getRequiredParams() {
+            return requiredParams;
+        }
+    }
+
+    public static final int COUNT = values().length;
+
+    private static final Map<String, CommandType> BY_ACTION = new HashMap<>();
+
+    static {
+        for (CommandType type : values()) {
+            if (type != STRATEGY) {
+                BY_ACTION.put(type.name(), type);
+            }
+        }
+    }
+
+    private final ArgumentKind argumentKind;
+    private final boolean coalescable;
+
+    CommandType(ArgumentKind argumentKind, boolean coalescable) {
+        this.argumentKind = argumentKind;
+        this.coalescable = coalescable;
+    }
+
+    public ArgumentKind getArgumentKind() {
+        return argumentKind;
+    }
+
+    // Idempotent "set" commands: only the latest pending value for a device matters
+    public boolean isCoalescable() {
+        return coalescable;
+    }
+
+    // Commands whose whole effect is the device state they set, so re-applying the latest one
+    // restores that state; currently the same as the coalescable ones
+    public boolean isStateSetting() {
+        return coalescable;
+    }
+
+    public static CommandType fromAction(String action) {
+        CommandType type = action == null ? null : BY_ACTION.get(action);
+        return type != null ? type : STRATEGY;
+    }
+}
@@ -0,0 +1,152 @@
+package core;
+
+// A device action resolved to an opcode with its arguments already parsed. Instances are
+// immutable, so a compiled command can be executed any number of times on any device.
+public final class DeviceCommand {
+
+    private final CommandType type;
+    private final String action;
+    private final String[] params;
+    private final boolean hasArguments;
+    private final boolean valid;
+    private final int intValue;
+    private final double doubleValue;
+    private final double secondDoubleValue;
+    private final boolean booleanValue;
+    private final String textValue;
+
+    private DeviceCommand(CommandType type, String action, String[] params, boolean hasArguments, boolean valid,
+                          int intValue, double doubleValue, double secondDoubleValue,
+                          boolean booleanValue, String textValue) {
+        this.type = type;
+        this.action = action;
+        this.params = params;
+        this.hasArguments = hasArguments;
+        this.valid = valid;
+        this.intValue = intValue;
+        this.doubleValue = doubleValue;
+        this.secondDoubleValue = secondDoubleValue;
+        this.booleanValue = booleanValue;
+        this.textValue = textValue;
+    }
+
+    // Resolves a string action and parses its parameters once
+    public static DeviceCommand compile(String action, String[] params) {
+        CommandType type = CommandType.fromAction(action);
+        CommandType.ArgumentKind kind = type.getArgumentKind();
+        boolean hasArguments = params != null && params.length >= kind.getRequiredParams();
+
+        int intValue = 0;
+        double doubleValue = 0;
+        double secondDoubleValue = 0;
+        boolean booleanValue = false;
+        String textValue = null;
+        boolean valid = hasArguments;
+
+        if (hasArguments) {
+            try {
+                switch (kind) {
+                    case INT:
+                        intValue = Integer.parseInt(params[0]);
+                        break;
+                    case DOUBLE:
+                        doubleValue = Double.parseDouble(params[0]);
+                        break;
+                    case DOUBLE_PAIR:
+                        doubleValue = Double.parseDouble(params[0]);
+                        secondDoubleValue = Double.parseDouble(params[1]);
+                        break;
+                    case BOOLEAN:
+                        booleanValue = Boolean.parseBoolean(params[0]);
+                        break;
+                    case TEXT:
+                        textValue = params[0];
+                        break;
+                    default:
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                valid = false;
+            }
+        }
+
+        return new DeviceCommand(type, action, params, hasArguments, valid,
+                intValue, doubleValue, secondDoubleValue, booleanValue, textValue);
+    }
+
+    public static DeviceCommand of(CommandType type) {
+        return new DeviceCommand(type, type.name(), new String[0], true, true, 0, 0, 0, false, null);
+    }
+
+    public static DeviceCommand ofInt(CommandType type, int value) {
+        return new DeviceCommand(type, type.name(), new String[] { String.valueOf(value) },
+                true, true, value, 0, 0, false, null);
+    }
+
+    public static DeviceCommand ofDouble(CommandType type, double value) {
+        return new DeviceCommand(type, type.name(), new String[] { String.valueOf(value) },
+                true, true, 0, value, 0, false, null);
+    }
+
+    public static DeviceCommand ofDoubles(CommandType type, double first, double second) {
+        return new DeviceCommand(type, type.name(), new String[] { String.valueOf(first), String.valueOf(second) },
+                true, true, 0, first, second, false, null);
+    }
+
+    public static DeviceCommand ofBoolean(CommandType type, boolean value) {
+        return new DeviceCommand(type, type.name(), new String[] { String.valueOf(value) },
+                true, true, 0, 0, 0, value, null);
+    }
+
+    public static DeviceCommand ofText(CommandType type, String value) {
+        return new DeviceCommand(type, type.name(), new String[] { value }, true, true, 0, 0, 0, false, value);
+    }
+
+    public CommandType getType() {
+        return type;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    // Raw parameters, as passed to control strategies
+    public String[] getParams() {
+        return params;
+    }
+
+    // True if enough parameters were supplied for the command's argument kind
+    public boolean hasArguments() {
+        return hasArguments;
+    }
+
+    // True if the arguments were supplied and parsed successfully
+    public boolean isValid() {
+        return valid;
+    }
+
+    public int getIntValue() {
+        return intValue;
+    }
+
+    public double getDoubleValue() {
+        return doubleValue;
+    }
+
+    public double getSecondDoubleValue() {
+        return secondDoubleValue;
+    }
+
+    public boolean getBooleanValue() {
+        return booleanValue;
+    }
+
+    public String getTextValue() {
+        return textValue;
+    }
+
+    @Override
+    public String toString() {
+        return action;
+    }
+}
@@ -0,0 +1,16 @@
+package core;
+
+import java.util.Map;
+
+// A feature (e.g. a sensor) attached to a device object instead of wrapped around it. Its
+// command handlers go into the device's own dispatch table and the device finds it by
+// capability in constant time, so calls on a device cost the same however many components
+// it has.
+public interface DeviceComponent {
+
+    Capability getCapability();
+
+    // Called once by the device the component is attached to. The returned handlers replace
+    // the device's own for the same command types.
+    Map<CommandType, CommandHandler> attach(SmartDevice device);
+}
@@ -0,0 +1,205 @@
+package core;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// Something that happened on a device: an interned type, a timestamp, the device and a typed
+// payload. The human-readable message is rendered from the payload the first time it is
+// asked for, so events nobody prints or stores never build a string.
+public final class DeviceEvent {
+
+    // Shared by everything that prints event times; DateTimeFormatter is immutable and thread-safe
+    public static final DateTimeFormatter TIMESTAMP_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final EventType type;
+    private final long timestampNanos;
+    // System.nanoTime() at creation, for measuring intervals between events; unlike the
+    // wall-clock timestamp it never jumps. Zero for restored events, which have none.
+    private final long monotonicNanos;
+    private final SmartDevice source;
+    // Only for events read back from a history, which keeps the device's name instead of the device
+    private final String sourceName;
+    private final int deviceId;
+    private final long longValue;
+    private final double doubleValue;
+    private final double secondDoubleValue;
+    private final String text;
+    private final EventType.Renderer renderer;
+    // True when the message was given up front instead of rendered from the payload
+    private final boolean presetMessage;
+    // Rendered lazily; racing renders produce equal strings
+    private String message;
+
+    private DeviceEvent(SmartDevice source, EventType type, long longValue, double doubleValue,
+                        double secondDoubleValue, String text, EventType.Renderer renderer, String message) {
+        this.type = type;
+        this.timestampNanos = currentEpochNanos();
+        this.monotonicNanos = System.nanoTime();
+        this.source = source;
+        this.sourceName = null;
+        this.deviceId = source == null ? -1 : source.getId();
+        this.longValue = longValue;
+        this.doubleValue = doubleValue;
+        this.secondDoubleValue = secondDoubleValue;
+        this.text = text;
+        this.renderer = renderer;
+        this.presetMessage = message != null;
+        this.message = message;
+    }
+
+    private DeviceEvent(long timestampNanos, int deviceId, String sourceName, EventType type, long longValue,
+                        double doubleValue, double secondDoubleValue, String text, String message) {
+        this.type = type;
+        this.timestampNanos = timestampNanos;
+        this.monotonicNanos = 0;
+        this.source = null;
+        this.sourceName = sourceName;
+        this.deviceId = deviceId;
+        this.longValue = longValue;
+        this.doubleValue = doubleValue;
+        this.secondDoubleValue = secondDoubleValue;
+        this.text = text;
+        this.renderer = type.getRenderer();
+        this.presetMessage = message != null;
+        this.message = message;
+    }
+
+    // Rebuilds an event read back from a history or log; a non-null message stands in for a
+    // renderer that was not stored
+    public static DeviceEvent restore(long timestampNanos, int deviceId, String deviceName, EventType type,
+                                      long longValue, double doubleValue, double secondDoubleValue,
+                                      String text, String message) {
+        return new DeviceEvent(timestampNanos, deviceId, deviceName, type, longValue, doubleValue,
+                secondDoubleValue, text, message);
+    }
+
+    public static DeviceEvent of(SmartDevice source, EventType type) {
+        return new DeviceEvent(source, type, 0, 0, 0, null, type.getRenderer(), null);
+    }
+
+    public static DeviceEvent of(SmartDevice source, EventType type, long value) {
+        return new DeviceEvent(source, type, value, value, 0, null, type.getRenderer(), null);
+    }
+
+    public static DeviceEvent of(SmartDevice source, EventType type, boolean value) {
+        return new DeviceEvent(source, type, value ? 1 : 0, 0, 0, null, type.getRenderer(), null);
+    }
+
+    public static DeviceEvent of(SmartDevice source, EventType type, double value, double secondValue) {
+        return new DeviceEvent(source, type, 0, value, secondValue, null, type.getRenderer(), null);
+    }
+
+    public static DeviceEvent of(SmartDevice source, EventType type, String text) {
+        return new DeviceEvent(source, type, 0, 0, 0, text, type.getRenderer(), null);
+    }
+
+    // For devices that word a shared event type their own way
+    public static DeviceEvent of(SmartDevice source, EventType type, String text, EventType.Renderer renderer) {
+        return new DeviceEvent(source, type, 0, 0, 0, text, renderer, null);
+    }
+
+    // An event whose message is already known, e.g. from the string-based notifyObservers
+    public static DeviceEvent withMessage(SmartDevice source, EventType type, String message) {
+        return new DeviceEvent(source, type, 0, 0, 0, message, type.getRenderer(), message);
+    }
+
+    // The same by type name, for string-based callers. A name that only maps to OTHER because
+    // the type registry is full is kept as the event's text.
+    public static DeviceEvent withMessage(SmartDevice source, String typeName, String message) {
+        EventType type = EventType.of(typeName);
+        String text = type == EventType.OTHER && !type.getName().equals(typeName) ? typeName : message;
+        return new DeviceEvent(source, type, 0, 0, 0, text, type.getRenderer(), message);
+    }
+
+    // Read from the wall clock on every call, so timestamps follow clock corrections instead of
+    // drifting away from them over a long uptime
+    public static long currentEpochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    public static String formatTimestamp(long epochNanos) {
+        return TIMESTAMP_FORMATTER.format(Instant.ofEpochSecond(0, epochNanos));
+    }
+
+    public EventType getType() {
+        return type;
+    }
+
+    public String getTypeName() {
+        return type.getName();
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public long getMonotonicNanos() {
+        return monotonicNanos;
+    }
+
+    public SmartDevice getSource() {
+        return source;
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public String getDeviceName() {
+        if (source != null) {
+            return source.getName();
+        }
+        return sourceName == null ? "unknown source" : sourceName;
+    }
+
+    public long getLongValue() {
+        return longValue;
+    }
+
+    public int getIntValue() {
+        return (int) longValue;
+    }
+
+    public boolean getBooleanValue() {
+        return longValue != 0;
+    }
+
+    public double getDoubleValue() {
+        return doubleValue;
+    }
+
+    public double getSecondDoubleValue() {
+        return secondDoubleValue;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    // True when the type's renderer cannot rebuild the message from the payload alone
+    public boolean hasCustomMessage() {
+        return presetMessage || renderer != type.getRenderer();
+    }
+
+    public String getMessage() {
+        String current = message;
+        if (current == null) {
+            current = renderer.render(this);
+            message = current;
+        }
+        return current;
+    }
+
+    public String formatTimestamp() {
+        return formatTimestamp(timestampNanos);
+    }
+
+    // "timestamp - device - event - message", as written to the event logs
+    @Override
+    public String toString() {
+        return formatTimestamp() + " - " + getDeviceName() + " - " + type.getName() + " - " + getMessage();
+    }
+}
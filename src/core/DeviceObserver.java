@@ -2,5 +2,10 @@ package core;
 
 public interface DeviceObserver {
     void update(SmartDevice device, String event, String message);
-}
 
+    // Structured form of update(); observers that do not always need the message text can
+    // override this to avoid rendering it
+    default void onEvent(DeviceEvent event) {
+        update(event.getSource(), event.getTypeName(), event.getMessage());
+    }
+}
@@ -0,0 +1,286 @@
+package core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Bounds the chain of events one root event can set off on a thread: an observer reacting
+// to an event may change a device, which raises another event, and so on. Every event
+// raised while another is being delivered joins the root's cascade; an event is dropped
+// when the cascade is too deep, has used up its event budget, or would repeat an event
+// type of a device that is already being delivered further up the chain (a cycle).
+public final class EventCascade {
+
+    public enum Outcome {
+        DELIVERED,
+        TOO_DEEP,
+        OVER_BUDGET,
+        CYCLE
+    }
+
+    // What one root event triggered, reported once its delivery has finished
+    public static final class Report {
+        private final DeviceEvent root;
+        private final int events;
+        private final int maxDepth;
+        private final int dropped;
+
+        Report(DeviceEvent root, int events, int maxDepth, int dropped) {
+            this.root = root;
+            this.events = events;
+            this.maxDepth = maxDepth;
+            this.dropped = dropped;
+        }
+
+        public DeviceEvent getRoot() {
+            return root;
+        }
+
+        // Delivered events, the root included
+        public int getEvents() {
+            return events;
+        }
+
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+
+        public int getDropped() {
+            return dropped;
+        }
+
+        @Override
+        public String toString() {
+            return root.getDeviceName() + " " + root.getTypeName() + ": " + events + " events, depth "
+                    + maxDepth + (dropped > 0 ? ", " + dropped + " dropped" : "");
+        }
+    }
+
+    // Used by devices that are not registered with a hub
+    private static final EventCascade DEFAULT = new EventCascade(16, 256);
+
+    // The cascade being delivered on this thread, if any
+    private static final ThreadLocal<Context> CURRENT = new ThreadLocal<>();
+
+    private volatile int maxDepth;
+    private volatile int maxEventsPerRoot;
+    private volatile Consumer<Report> reportListener;
+
+    private final LongAdder roots = new LongAdder();
+    private final LongAdder events = new LongAdder();
+    private final LongAdder tooDeep = new LongAdder();
+    private final LongAdder overBudget = new LongAdder();
+    private final LongAdder cycles = new LongAdder();
+    private final AtomicLong deepest = new AtomicLong();
+    private volatile Report heaviest;
+
+    public EventCascade(int maxDepth, int maxEventsPerRoot) {
+        setLimits(maxDepth, maxEventsPerRoot);
+    }
+
+    public static EventCascade getDefault() {
+        return DEFAULT;
+    }
+
+    // Depth 1 allows the root only; the budget counts every delivered event of one root
+    public void setLimits(int maxDepth, int maxEventsPerRoot) {
+        if (maxDepth < 1 || maxEventsPerRoot < 1) {
+            throw new IllegalArgumentException("Cascade limits must be positive");
+        }
+        this.maxDepth = maxDepth;
+        this.maxEventsPerRoot = maxEventsPerRoot;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxEventsPerRoot() {
+        return maxEventsPerRoot;
+    }
+
+    // Called on the delivering thread after each root event
+    public void setReportListener(Consumer<Report> listener) {
+        this.reportListener = listener;
+    }
+
+    // Delivers the event unless the cascade it joins forbids it. A root event starts a new
+    // cascade with this instance's limits; nested events inherit the limits of their root.
+    public Outcome deliver(DeviceEvent event, Runnable delivery) {
+        Context context = CURRENT.get();
+        boolean root = context == null;
+        if (root) {
+            context = new Context(this, event);
+            CURRENT.set(context);
+        }
+        Outcome outcome = context.push(event);
+        if (outcome != Outcome.DELIVERED) {
+            return outcome;
+        }
+        // A root is never dropped, so a context set above is always cleared below
+        try {
+            delivery.run();
+        } finally {
+            context.pop();
+            if (root) {
+                CURRENT.remove();
+                context.finish();
+            }
+        }
+        return outcome;
+    }
+
+    public long getRootCount() {
+        return roots.sum();
+    }
+
+    public long getEventCount() {
+        return events.sum();
+    }
+
+    public long getDroppedCount(Outcome reason) {
+        switch (reason) {
+            case TOO_DEEP:
+                return tooDeep.sum();
+            case OVER_BUDGET:
+                return overBudget.sum();
+            case CYCLE:
+                return cycles.sum();
+            default:
+                return 0;
+        }
+    }
+
+    public long getDeepestCascade() {
+        return deepest.get();
+    }
+
+    // The root event that triggered the most events so far, or null
+    public Report getHeaviestRoot() {
+        return heaviest;
+    }
+
+    public void printStats() {
+        System.out.println("\n===== EVENT CASCADES =====");
+        long rootCount = roots.sum();
+        System.out.println("Root events: " + rootCount + ", events delivered: " + events.sum()
+                + (rootCount > 0 ? String.format(" (%.2f per root)", (double) events.sum() / rootCount) : ""));
+        System.out.println("Deepest cascade: " + deepest.get() + " (limit " + maxDepth + ")");
+        System.out.println("Dropped: " + tooDeep.sum() + " too deep, " + overBudget.sum() + " over budget ("
+                + maxEventsPerRoot + " per root), " + cycles.sum() + " cycles");
+        Report report = heaviest;
+        if (report != null) {
+            System.out.println("Heaviest root: " + report);
+        }
+        System.out.println("==========================\n");
+    }
+
+    private void record(Report report) {
+        roots.increment();
+        events.add(report.events);
+        deepest.accumulateAndGet(report.maxDepth, Math::max);
+        Report current = heaviest;
+        if (current == null || report.events > current.events) {
+            heaviest = report;
+        }
+        if (report.dropped > 0) {
+            System.out.println("Event cascade cut short: " + report);
+        }
+        Consumer<Report> listener = reportListener;
+        if (listener != null) {
+            listener.accept(report);
+        }
+    }
+
+    private void dropped(Outcome reason) {
+        switch (reason) {
+            case TOO_DEEP:
+                tooDeep.increment();
+                break;
+            case OVER_BUDGET:
+                overBudget.increment();
+                break;
+            default:
+                cycles.increment();
+                break;
+        }
+    }
+
+    private static final class Context {
+        private final EventCascade owner;
+        private final DeviceEvent root;
+        private final int maxDepth;
+        private final int budget;
+        // Events being delivered, outermost first; the same event handed on again (e.g. from
+        // a device to its hub) occupies a slot without counting as a level
+        private DeviceEvent[] stack = new DeviceEvent[8];
+        private long[] keys = new long[8];
+        private boolean[] counted = new boolean[8];
+        private int size;
+        private int depth;
+        private int delivered;
+        private int deepest;
+        private int dropped;
+
+        Context(EventCascade owner, DeviceEvent root) {
+            this.owner = owner;
+            this.root = root;
+            this.maxDepth = owner.maxDepth;
+            this.budget = owner.maxEventsPerRoot;
+        }
+
+        Outcome push(DeviceEvent event) {
+            boolean repeat = size > 0 && stack[size - 1] == event;
+            long key = ((long) event.getDeviceId() << 32) | event.getType().getCode();
+            if (!repeat) {
+                Outcome outcome = check(key);
+                if (outcome != Outcome.DELIVERED) {
+                    dropped++;
+                    owner.dropped(outcome);
+                    return outcome;
+                }
+                depth++;
+                delivered++;
+                deepest = Math.max(deepest, depth);
+            }
+            if (size == stack.length) {
+                stack = Arrays.copyOf(stack, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+                counted = Arrays.copyOf(counted, size * 2);
+            }
+            stack[size] = event;
+            keys[size] = key;
+            counted[size] = !repeat;
+            size++;
+            return Outcome.DELIVERED;
+        }
+
+        private Outcome check(long key) {
+            if (depth >= maxDepth) {
+                return Outcome.TOO_DEEP;
+            }
+            if (delivered >= budget) {
+                return Outcome.OVER_BUDGET;
+            }
+            for (int i = 0; i < size; i++) {
+                if (counted[i] && keys[i] == key) {
+                    return Outcome.CYCLE;
+                }
+            }
+            return Outcome.DELIVERED;
+        }
+
+        void pop() {
+            size--;
+            if (counted[size]) {
+                depth--;
+            }
+            stack[size] = null;
+        }
+
+        void finish() {
+            owner.record(new Report(root, delivered, deepest, dropped));
+        }
+    }
+}
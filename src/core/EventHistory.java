@@ -0,0 +1,202 @@
+package core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Fixed-capacity ring of the most recent device events, kept as compact primitive records
+// in one ByteBuffer (on the heap or off it) instead of formatted strings. Appending
+// overwrites the oldest record in O(1); reading walks the records in place through a
+// reusable cursor, and strings are only built for the records actually printed.
+//
+// Record layout (40 bytes): long timestampNanos, int deviceId, int eventCode,
+// long longValue, double doubleValue, double secondDoubleValue.
+// Text payloads and messages that cannot be rendered from the payload are kept in side
+// slots on the heap; device names are kept once per device.
+public final class EventHistory {
+
+    public static final int RECORD_BYTES = 40;
+    // Per record on the heap: the text and message slot references
+    private static final int SLOT_BYTES = 2 * 8;
+
+    private static final int DEVICE_ID = 8;
+    private static final int EVENT_CODE = 12;
+    private static final int LONG_VALUE = 16;
+    private static final int DOUBLE_VALUE = 24;
+    private static final int SECOND_DOUBLE_VALUE = 32;
+
+    // Called for each record in turn; the cursor is only valid during the call
+    public interface Visitor {
+        void visit(Cursor record);
+    }
+
+    // Read-only view of the record being visited
+    public final class Cursor {
+        private int offset;
+        private int slot;
+
+        public long getTimestampNanos() {
+            return records.getLong(offset);
+        }
+
+        public int getDeviceId() {
+            return records.getInt(offset + DEVICE_ID);
+        }
+
+        public String getDeviceName() {
+            String name = deviceNames.get(getDeviceId());
+            return name == null ? "unknown source" : name;
+        }
+
+        public EventType getType() {
+            return EventType.fromCode(records.getInt(offset + EVENT_CODE));
+        }
+
+        public long getLongValue() {
+            return records.getLong(offset + LONG_VALUE);
+        }
+
+        public double getDoubleValue() {
+            return records.getDouble(offset + DOUBLE_VALUE);
+        }
+
+        public double getSecondDoubleValue() {
+            return records.getDouble(offset + SECOND_DOUBLE_VALUE);
+        }
+
+        public String getText() {
+            return texts[slot];
+        }
+
+        // Rebuilds the event; its source is null, but device id and name are kept
+        public DeviceEvent toEvent() {
+            return DeviceEvent.restore(getTimestampNanos(), getDeviceId(), getDeviceName(), getType(),
+                    getLongValue(), getDoubleValue(), getSecondDoubleValue(), texts[slot], messages[slot]);
+        }
+
+        // Same text as DeviceEvent.toString() for the original event
+        public String format() {
+            return toEvent().toString();
+        }
+    }
+
+    private final int capacity;
+    private final boolean direct;
+    private final Map<Integer, String> deviceNames;
+    // Guarded by this history
+    private final ByteBuffer records;
+    private final String[] texts;
+    private final String[] messages;
+    private final Cursor cursor;
+    private long appended;
+
+    public EventHistory(int capacity) {
+        this(capacity, false);
+    }
+
+    // direct=true keeps the records off the Java heap
+    public EventHistory(int capacity, boolean direct) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("History capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.direct = direct;
+        this.records = direct
+                ? ByteBuffer.allocateDirect(capacity * RECORD_BYTES)
+                : ByteBuffer.allocate(capacity * RECORD_BYTES);
+        this.texts = new String[capacity];
+        this.messages = new String[capacity];
+        this.cursor = new Cursor();
+        this.deviceNames = new ConcurrentHashMap<>();
+    }
+
+    // As many records as fit in the budget, counting the record and its slot references
+    public static EventHistory withBudget(long bytes, boolean direct) {
+        long records = bytes / (RECORD_BYTES + SLOT_BYTES);
+        if (records < 1) {
+            throw new IllegalArgumentException("Budget of " + bytes + " bytes is too small for one event");
+        }
+        return new EventHistory((int) Math.min(records, Integer.MAX_VALUE / RECORD_BYTES), direct);
+    }
+
+    public synchronized void append(DeviceEvent event) {
+        int slot = (int) (appended % capacity);
+        int offset = slot * RECORD_BYTES;
+        records.putLong(offset, event.getTimestampNanos());
+        records.putInt(offset + DEVICE_ID, event.getDeviceId());
+        records.putInt(offset + EVENT_CODE, event.getType().getCode());
+        records.putLong(offset + LONG_VALUE, event.getLongValue());
+        records.putDouble(offset + DOUBLE_VALUE, event.getDoubleValue());
+        records.putDouble(offset + SECOND_DOUBLE_VALUE, event.getSecondDoubleValue());
+        texts[slot] = event.getText();
+        messages[slot] = event.hasCustomMessage() ? event.getMessage() : null;
+        appended++;
+
+        String name = event.getDeviceName();
+        if (!name.equals(deviceNames.get(event.getDeviceId()))) {
+            deviceNames.put(event.getDeviceId(), name);
+            // Devices whose records were all overwritten keep their names until there are
+            // twice as many names as records, then only the stored devices' names are kept
+            if (deviceNames.size() > 2L * capacity) {
+                pruneDeviceNames();
+            }
+        }
+    }
+
+    private void pruneDeviceNames() {
+        Set<Integer> stored = new HashSet<>();
+        forEach(record -> stored.add(record.getDeviceId()));
+        deviceNames.keySet().retainAll(stored);
+    }
+
+    // Visits the stored records, oldest first, while holding the history
+    public synchronized void forEach(Visitor visitor) {
+        long first = Math.max(0, appended - capacity);
+        for (long i = first; i < appended; i++) {
+            cursor.slot = (int) (i % capacity);
+            cursor.offset = cursor.slot * RECORD_BYTES;
+            visitor.visit(cursor);
+        }
+    }
+
+    // Formatted copies of the stored records, oldest first
+    public List<String> format() {
+        List<String> lines = new ArrayList<>(size());
+        forEach(record -> lines.add(record.format()));
+        return lines;
+    }
+
+    public synchronized int size() {
+        return (int) Math.min(appended, capacity);
+    }
+
+    // Every event ever appended, including those already overwritten
+    public synchronized long getAppendedCount() {
+        return appended;
+    }
+
+    public synchronized void clear() {
+        appended = 0;
+        deviceNames.clear();
+        Arrays.fill(texts, null);
+        Arrays.fill(messages, null);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    // Bytes reserved for the records and their slots, excluding the strings themselves
+    public long getMemoryBytes() {
+        return (long) capacity * (RECORD_BYTES + SLOT_BYTES);
+    }
+}
@@ -0,0 +1,31 @@
+package core;
+
+// Destination for hub-wide notifications raised by a device. Devices are bound to the
+// sink of the hub they are registered with, so several hubs can run side by side.
+public interface EventSink {
+
+    // Sink for devices that are not registered with any hub
+    EventSink NONE = (source, event, message) -> { };
+
+    void broadcastNotification(SmartDevice source, String event, String message);
+
+    default void broadcast(DeviceEvent event) {
+        broadcastNotification(event.getSource(), event.getTypeName(), event.getMessage());
+    }
+
+    // Hands a device event to an asynchronous event bus. Returns false if there is none,
+    // in which case the device delivers the event to its observers and this sink itself.
+    default boolean publish(DeviceEvent event) {
+        return false;
+    }
+
+    // Called after a component is attached to a device bound to this sink, so a hub can
+    // index the capability of a device that is already registered
+    default void componentAttached(SmartDevice device, DeviceComponent component) {
+    }
+
+    // Limits the events an event delivered through this sink may set off in turn
+    default EventCascade getCascade() {
+        return EventCascade.getDefault();
+    }
+}
@@ -0,0 +1,148 @@
+package core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Interned device event type. Each distinct event name maps to exactly one EventType with a
+// small integer code, so events can be compared with == and stored as a number. The type also
+// knows how to render the human-readable message from an event's typed payload.
+public final class EventType {
+
+    // Builds the message text of an event; only called when the text is actually needed
+    public interface Renderer {
+        String render(DeviceEvent event);
+    }
+
+    // How urgent an event is, lowest first; used to filter notifications
+    public enum Severity {
+        INFO,
+        WARNING,
+        CRITICAL
+    }
+
+    private static final Renderer TEXT = event -> event.getText() == null ? "" : event.getText();
+
+    // Types are never removed, so names created on the fly are capped to keep the registry
+    // bounded; later names share OTHER
+    public static final int MAX_TYPES = 1024;
+
+    private static final Map<String, EventType> BY_NAME = new ConcurrentHashMap<>();
+    private static volatile EventType[] byCode = new EventType[32];
+    private static int nextCode = 0;
+
+    public static final EventType STATE_CHANGED = define("STATE_CHANGED", Severity.INFO,
+            event -> "Device turned " + (event.getBooleanValue() ? "ON" : "OFF"));
+    public static final EventType BRIGHTNESS_CHANGED = define("BRIGHTNESS_CHANGED", Severity.INFO,
+            event -> "Brightness set to " + event.getIntValue() + "%");
+    public static final EventType COLOR_CHANGED = define("COLOR_CHANGED", Severity.INFO,
+            event -> "Color set to " + event.getText());
+    public static final EventType SPEED_CHANGED = define("SPEED_CHANGED", Severity.INFO,
+            event -> "Fan speed set to " + event.getIntValue());
+    public static final EventType OSCILLATION_CHANGED = define("OSCILLATION_CHANGED", Severity.INFO,
+            event -> "Oscillation " + (event.getBooleanValue() ? "enabled" : "disabled"));
+    public static final EventType TEMPERATURE_CHANGED = define("TEMPERATURE_CHANGED", Severity.INFO,
+            event -> "Temperature set to " + event.getIntValue() + "°C");
+    public static final EventType MODE_CHANGED = define("MODE_CHANGED", Severity.INFO,
+            event -> "Mode set to " + event.getText());
+    public static final EventType FAN_SPEED_CHANGED = define("FAN_SPEED_CHANGED", Severity.INFO,
+            event -> "Fan speed set to " + event.getIntValue());
+    public static final EventType SECURITY_ALERT = define("SECURITY_ALERT", Severity.CRITICAL, TEXT);
+    public static final EventType PET_ACTIVITY = define("PET_ACTIVITY", Severity.INFO, TEXT);
+    // Payload: reading, threshold
+    public static final EventType TEMPERATURE_WARNING = define("TEMPERATURE_WARNING", Severity.WARNING,
+            event -> "Temperature is too high: " + event.getDoubleValue() + "°C (Threshold: "
+                    + event.getSecondDoubleValue() + "°C)");
+    // Payload: reading, the threshold it crossed
+    public static final EventType HUMIDITY_WARNING = define("HUMIDITY_WARNING", Severity.WARNING,
+            event -> "Humidity is too " + (event.getDoubleValue() > event.getSecondDoubleValue() ? "high" : "low")
+                    + ": " + event.getDoubleValue() + "% (Threshold: " + event.getSecondDoubleValue() + "%)");
+    public static final EventType MOTION_DETECTED = define("MOTION_DETECTED", Severity.INFO,
+            event -> "Motion detected by " + event.getDeviceName());
+    public static final EventType MOTION_STOPPED = define("MOTION_STOPPED", Severity.INFO,
+            event -> "Motion stopped at " + event.getDeviceName());
+    public static final EventType CRITICAL_SECURITY_ALERT = define("CRITICAL_SECURITY_ALERT", Severity.CRITICAL,
+            TEXT);
+    public static final EventType BATCH_COMMAND = define("BATCH_COMMAND", Severity.INFO, TEXT);
+    // Shared by every name that arrives once the registry is full
+    public static final EventType OTHER = define("OTHER", Severity.INFO, TEXT);
+
+    private final String name;
+    private final int code;
+    private final Severity severity;
+    private final Renderer renderer;
+
+    private EventType(String name, int code, Severity severity, Renderer renderer) {
+        this.name = name;
+        this.code = code;
+        this.severity = severity;
+        this.renderer = renderer;
+    }
+
+    // Returns the interned type for the name, creating a plain-text INFO one on first use.
+    // Once MAX_TYPES types exist, new names get OTHER instead.
+    public static EventType of(String name) {
+        EventType type = BY_NAME.get(name);
+        return type != null ? type : define(name, Severity.INFO, TEXT);
+    }
+
+    // Returns the interned type for the name, or null without creating one
+    public static EventType find(String name) {
+        return BY_NAME.get(name);
+    }
+
+    // A plain-text type for a name this process has not registered, e.g. one read back from a
+    // log. It is not interned: it compares unequal to every other type and has no code (-1).
+    public static EventType unregistered(String name) {
+        EventType type = BY_NAME.get(name);
+        return type != null ? type : new EventType(name, -1, Severity.INFO, TEXT);
+    }
+
+    // Returns null for an unknown code
+    public static EventType fromCode(int code) {
+        EventType[] current = byCode;
+        return code >= 0 && code < current.length ? current[code] : null;
+    }
+
+    private static synchronized EventType define(String name, Severity severity, Renderer renderer) {
+        EventType existing = BY_NAME.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        if (nextCode >= MAX_TYPES) {
+            return OTHER;
+        }
+        EventType type = new EventType(name, nextCode++, severity, renderer);
+        EventType[] current = byCode;
+        if (type.code >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        } else {
+            current = current.clone();
+        }
+        current[type.code] = type;
+        byCode = current;
+        BY_NAME.put(name, type);
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    public Renderer getRenderer() {
+        return renderer;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
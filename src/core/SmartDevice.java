@@ -1,13 +1,50 @@
 package core;
 
+import java.util.Collections;
+import java.util.Set;
+
 public interface SmartDevice {
     String getName();
+    // Process-unique numeric id, used to key events compactly
+    int getId();
     void turnOn();
     void turnOff();
     boolean isOn();
-    void executeAction(String action, String[] params);
+    void execute(DeviceCommand command);
     void addObserver(DeviceObserver observer);
     void removeObserver(DeviceObserver observer);
-    void notifyObservers(String event, String message);
+    void notifyObservers(DeviceEvent event);
+    // Delivers to the observers attached to this device only, on the calling thread
+    void notifyLocalObservers(DeviceEvent event);
     DeviceStatus getStatus();
-}
\ No newline at end of file
+    void setEventSink(EventSink eventSink);
+    EventSink getEventSink();
+
+    // String form of notifyObservers(), for events with a preformatted message
+    default void notifyObservers(String event, String message) {
+        notifyObservers(DeviceEvent.withMessage(this, event, message));
+    }
+
+    // String form of execute(), kept for compatibility: resolves the action on every call,
+    // so hot paths should compile a DeviceCommand once and reuse it
+    default void executeAction(String action, String[] params) {
+        execute(DeviceCommand.compile(action, params));
+    }
+
+    // Capabilities provided by this object itself, not by any device it wraps
+    default Set<Capability> getCapabilities() {
+        return Collections.emptySet();
+    }
+
+    // Attaches the component to this device and returns it; see DeviceComponent. Throws
+    // IllegalStateException if a component with the same capability is already attached.
+    <T extends DeviceComponent> T attach(T component);
+
+    // The attached component providing the capability, or null
+    DeviceComponent getComponent(Capability capability);
+
+    // The device wrapped by this one, or null if this is not a decorator
+    default SmartDevice getDecoratedDevice() {
+        return null;
+    }
+}
@@ -1,24 +1,51 @@
 package core;
 
 import core.managers.DeviceManager;
+import core.managers.RegistrySnapshot;
+import core.managers.Scene;
+import core.managers.SceneManager;
 import core.managers.UserManager;
+import core.services.AdmissionController;
+import core.services.BatchResult;
+import core.services.CommandJournal;
+import core.services.CommandResult;
 import core.services.CommandRouter;
+import core.services.DeliveryMode;
+import core.services.EventBus;
+import core.services.NotificationChannel;
 import core.services.NotificationService;
+import core.services.SubscriptionIndex;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
-public class SmartHomeHub {
+public class SmartHomeHub implements EventSink {
     private final DeviceManager deviceManager;
     private final UserManager userManager;
+    private final SceneManager sceneManager;
     private final CommandRouter commandRouter;
     private final NotificationService notificationService;
+    // Observers of the devices registered with this hub, by what they subscribed to
+    private final SubscriptionIndex<DeviceObserver> subscriptions;
+    private volatile EventBus eventBus;
+    // Bounds the chains of events observers set off from this hub's devices
+    private final EventCascade cascade;
 
     public SmartHomeHub() {
         this.deviceManager = new DeviceManager();
         this.userManager = new UserManager();
-        this.commandRouter = new CommandRouter(deviceManager);
-        this.notificationService = new NotificationService(userManager);
+        this.sceneManager = new SceneManager();
+        this.notificationService = new NotificationService(deviceManager);
+        this.commandRouter = new CommandRouter(deviceManager, notificationService);
+        this.subscriptions = new SubscriptionIndex<>(deviceManager);
+        this.cascade = new EventCascade(16, 256);
     }
 
+    // Shared default instance for single-home setups. Devices never reach it implicitly:
+    // they notify whichever hub they were registered with.
     private static class SingletonHelper {
         private static final SmartHomeHub INSTANCE = new SmartHomeHub();
     }
@@ -31,15 +58,20 @@ public class SmartHomeHub {
     public interface DeviceIterator {
         boolean hasNext();
         SmartDevice next();
+        // Registry epoch of the snapshot being iterated; compare with getTopologyEpoch()
+        // to tell whether devices were registered or removed since the iterator was created
+        long getEpoch();
     }
 
     // Iterator implementation
     private class DeviceIteratorImpl implements DeviceIterator {
-        private List<SmartDevice> devicesList;
+        private final List<SmartDevice> devicesList;
+        private final long epoch;
         private int position;
 
-        public DeviceIteratorImpl(List<SmartDevice> devicesList) {
+        public DeviceIteratorImpl(List<SmartDevice> devicesList, long epoch) {
             this.devicesList = devicesList;
+            this.epoch = epoch;
             this.position = 0;
         }
 
@@ -55,39 +87,322 @@ public class SmartHomeHub {
             }
             return null;
         }
+
+        @Override
+        public long getEpoch() {
+            return epoch;
+        }
     }
 
     // Iterator access methods
     public DeviceIterator getDeviceIterator() {
-        return new DeviceIteratorImpl(deviceManager.getAllDevices());
+        RegistrySnapshot snapshot = deviceManager.getSnapshot();
+        return new DeviceIteratorImpl(snapshot.getDevices(), snapshot.getEpoch());
     }
 
     public DeviceIterator getRoomDeviceIterator(String room) {
-        return new DeviceIteratorImpl(deviceManager.getDevicesInRoom(room));
+        RegistrySnapshot snapshot = deviceManager.getSnapshot();
+        return new DeviceIteratorImpl(snapshot.getDevicesInRoom(room), snapshot.getEpoch());
+    }
+
+    // Devices at the location or anywhere below it, e.g. everything on "Floor 2"
+    public DeviceIterator getLocationDeviceIterator(String location) {
+        RegistrySnapshot snapshot = deviceManager.getLocationSnapshot(location);
+        return new DeviceIteratorImpl(snapshot.getDevices(), snapshot.getEpoch());
+    }
+
+    public int countDevicesUnder(String location) {
+        return deviceManager.countDevicesUnder(location);
+    }
+
+    public long getTopologyEpoch() {
+        return deviceManager.getEpoch();
     }
 
     public void registerDevice(SmartDevice device, String room) {
-        deviceManager.registerDevice(device, room);
+        if (deviceManager.registerDevice(device, room)) {
+            device.setEventSink(this);
+        }
     }
 
     public void removeDevice(SmartDevice device) {
-        deviceManager.removeDevice(device);
+        if (deviceManager.removeDevice(device)) {
+            commandRouter.deviceRemoved(device);
+            if (device.getEventSink() == this) {
+                device.setEventSink(EventSink.NONE);
+            }
+        }
+    }
+
+    public void moveDevice(SmartDevice device, String newRoom) {
+        deviceManager.moveDevice(device, newRoom);
+    }
+
+    public SmartDevice findDevice(String deviceName) {
+        return deviceManager.findDeviceByName(deviceName);
+    }
+
+    public SmartDevice findDeviceIgnoreCase(String deviceName) {
+        return deviceManager.findDeviceByNameIgnoreCase(deviceName);
+    }
+
+    // Objects providing the capability (an attached component, or the device or decorator
+    // layer itself), looked up from the capability index instead of scanning every device
+    public <T> List<T> findCapability(Capability capability, Class<T> type) {
+        return castAll(deviceManager.findByCapability(capability), type);
+    }
+
+    public <T> List<T> findCapability(Capability capability, String room, Class<T> type) {
+        return castAll(deviceManager.findByCapability(capability, room), type);
+    }
+
+    private static <T> List<T> castAll(List<Object> providers, Class<T> type) {
+        List<T> result = new ArrayList<>(providers.size());
+        for (Object provider : providers) {
+            if (type.isInstance(provider)) {
+                result.add(type.cast(provider));
+            }
+        }
+        return result;
     }
 
     public void registerUser(User user) {
         userManager.registerUser(user);
+        notificationService.addUser(user);
     }
 
     public void removeUser(User user) {
         userManager.removeUser(user);
+        notificationService.removeUser(user);
+    }
+
+    // Users are notified of every event until subscribed more narrowly, e.g.
+    // Subscription.rooms("Nursery").andAtLeast(EventType.Severity.WARNING)
+    public void setUserSubscription(User user, Subscription subscription) {
+        notificationService.setSubscription(user, subscription);
+        System.out.println("Notifications for " + user.getName() + ": " + subscription);
+    }
+
+    // Adds to the user's interests instead of replacing them
+    public void addUserSubscription(User user, Subscription subscription) {
+        notificationService.addSubscription(user, subscription);
+    }
+
+    // Repeats of the event type from the same device within the window are counted, not sent,
+    // and summarized when the window closes; a window of zero turns suppression off
+    public void setSuppressionWindow(EventType type, long window, TimeUnit unit) {
+        notificationService.getThrottle().setWindow(type, window, unit);
+    }
+
+    // Immediate by default; batched and digest delivery trade latency for fewer messages
+    public void setDeliveryMode(User user, DeliveryMode mode) {
+        notificationService.getDelivery().setMode(user, mode);
+        System.out.println("Notifications for " + user.getName() + ": " + mode);
+    }
+
+    // A null channel reverts the user to the default channel
+    public void setNotificationChannel(User user, NotificationChannel channel) {
+        notificationService.getDelivery().setChannel(user, channel);
+    }
+
+    public void setDefaultNotificationChannel(NotificationChannel channel) {
+        notificationService.getDelivery().setDefaultChannel(channel);
+    }
+
+    public CommandResult sendCommand(SmartDevice source, String targetDeviceName, String command, String[] params) {
+        return commandRouter.routeCommand(source, targetDeviceName, command, params);
+    }
+
+    public CommandResult sendCommand(SmartDevice source, String targetDeviceName, DeviceCommand command) {
+        return commandRouter.routeCommand(source, targetDeviceName, command);
+    }
+
+    public CompletableFuture<CommandResult> sendCommandAsync(SmartDevice source, String targetDeviceName,
+                                                             DeviceCommand command) {
+        return commandRouter.routeCommandAsync(source, targetDeviceName, command);
+    }
+
+    public CompletableFuture<CommandResult> sendCommandAsync(SmartDevice source, String targetDeviceName,
+                                                             String command, String[] params) {
+        return commandRouter.routeCommandAsync(source, targetDeviceName, command, params);
+    }
+
+    public CompletableFuture<BatchResult> sendCommandToRoom(SmartDevice source, String room,
+                                                            String command, String[] params) {
+        return commandRouter.routeToRoom(source, room, command, params);
+    }
+
+    public CompletableFuture<BatchResult> sendCommandToCapability(SmartDevice source, Capability capability,
+                                                                  String command, String[] params) {
+        return commandRouter.routeToCapability(source, capability, command, params);
+    }
+
+    public CompletableFuture<BatchResult> sendCommandToGroup(SmartDevice source, String groupName,
+                                                             String command, String[] params) {
+        return commandRouter.routeToGroup(source, groupName, command, params);
+    }
+
+    // Per-device and per-source rate limits for routed commands
+    public AdmissionController getAdmissionController() {
+        return commandRouter.getAdmissionController();
+    }
+
+    public void enableCommandCoalescing(long windowMillis) {
+        commandRouter.enableCoalescing(windowMillis);
+    }
+
+    public void disableCommandCoalescing() {
+        commandRouter.disableCoalescing();
+    }
+
+    public void addToGroup(String groupName, SmartDevice device) {
+        deviceManager.addToGroup(groupName, device);
+    }
+
+    public void removeFromGroup(String groupName, SmartDevice device) {
+        deviceManager.removeFromGroup(groupName, device);
+    }
+
+    public void defineScene(Scene scene) {
+        sceneManager.defineScene(scene);
+    }
+
+    public void removeScene(String sceneName) {
+        sceneManager.removeScene(sceneName);
+    }
+
+    public List<String> getSceneNames() {
+        return sceneManager.getSceneNames();
+    }
+
+    // Applies every action of the scene in parallel; completes once all devices are done
+    public CompletableFuture<BatchResult> activateScene(SmartDevice source, String sceneName) {
+        Scene scene = sceneManager.getScene(sceneName);
+        if (scene == null) {
+            System.out.println("Scene not found: " + sceneName);
+            return CompletableFuture.completedFuture(new BatchResult("scene " + sceneName,
+                    List.of(CommandResult.notFound(sceneName))));
+        }
+        return commandRouter.routeScene(source, scene);
+    }
+
+    // Observes every event of every device registered with this hub
+    public void addObserver(DeviceObserver observer) {
+        subscribe(observer, Subscription.all());
+    }
+
+    // Observes only the events matching the subscription, e.g.
+    // Subscription.rooms("Kitchen").andEventTypes(EventType.HUMIDITY_WARNING)
+    public void subscribe(DeviceObserver observer, Subscription subscription) {
+        subscriptions.subscribe(observer, subscription);
+    }
+
+    // Removes every subscription of the observer
+    public void removeObserver(DeviceObserver observer) {
+        subscriptions.unsubscribe(observer);
+    }
+
+    // Moves event delivery off the device threads: device observers, user notifications and
+    // hub observers each consume the events from the bus on their own thread
+    public synchronized void startEventBus(int capacity) {
+        if (eventBus != null) {
+            return;
+        }
+        EventBus bus = new EventBus(capacity);
+        // Each observer consumer starts its own cascade for the events it delivers
+        bus.addConsumer("device-observers",
+                event -> cascade.deliver(event, () -> event.getSource().notifyLocalObservers(event)));
+        bus.addConsumer("notifications", notificationService::broadcast);
+        bus.addConsumer("hub-observers", event -> cascade.deliver(event, () -> notifyHubObservers(event)));
+        bus.start();
+        eventBus = bus;
+        System.out.println("Event bus started with " + bus.getCapacity() + " slots");
     }
 
-    public void sendCommand(SmartDevice source, String targetDeviceName, String command, String[] params) {
-        commandRouter.routeCommand(source, targetDeviceName, command, params);
+    public void startEventBus() {
+        startEventBus(1024);
     }
 
+    // Journals routed commands to the file so they can be audited and replayed
+    public void enableCommandJournal(String path) {
+        try {
+            commandRouter.setJournal(new CommandJournal(Paths.get(path)));
+            System.out.println("Command journal enabled: " + path);
+        } catch (IOException e) {
+            System.err.println("Error opening command journal: " + e.getMessage());
+        }
+    }
+
+    public void replayCommandJournal(String path) {
+        try {
+            commandRouter.replayJournal(Paths.get(path));
+        } catch (IOException e) {
+            System.err.println("Error replaying command journal: " + e.getMessage());
+        }
+    }
+
+    // Drains queued commands, events and notifications before returning. The journal is closed
+    // last: queued commands still waiting for their records count as pending until they ran.
+    public void shutdown() {
+        if (!commandRouter.shutdown(5, TimeUnit.SECONDS)) {
+            System.out.println("Timed out waiting for queued commands to finish");
+        }
+        EventBus bus = eventBus;
+        if (bus != null && !bus.shutdown(5, TimeUnit.SECONDS)) {
+            System.out.println("Timed out waiting for queued events to be delivered");
+        }
+        if (!notificationService.shutdown(5, TimeUnit.SECONDS)) {
+            System.out.println("Timed out waiting for notifications to be delivered");
+        }
+        CommandJournal journal = commandRouter.getJournal();
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing command journal: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
     public void broadcastNotification(SmartDevice source, String event, String message) {
-        notificationService.broadcastNotification(source, event, message);
+        broadcast(DeviceEvent.withMessage(source, event, message));
+    }
+
+    @Override
+    public void broadcast(DeviceEvent event) {
+        cascade.deliver(event, () -> {
+            notificationService.broadcast(event);
+            notifyHubObservers(event);
+        });
+    }
+
+    @Override
+    public EventCascade getCascade() {
+        return cascade;
+    }
+
+    @Override
+    public void componentAttached(SmartDevice device, DeviceComponent component) {
+        deviceManager.addComponent(device, component);
+    }
+
+    // maxDepth counts the root event as level 1; maxEventsPerRoot bounds everything one root sets off
+    public void setCascadeLimits(int maxDepth, int maxEventsPerRoot) {
+        cascade.setLimits(maxDepth, maxEventsPerRoot);
+        System.out.println("Event cascades limited to depth " + maxDepth + " and "
+                + maxEventsPerRoot + " events per root");
+    }
+
+    // Batched commands stay synchronous so their notifications can still be combined
+    @Override
+    public boolean publish(DeviceEvent event) {
+        EventBus bus = eventBus;
+        return bus != null && !notificationService.isBatching() && bus.publish(event);
+    }
+
+    private void notifyHubObservers(DeviceEvent event) {
+        subscriptions.dispatch(event, observer -> observer.onEvent(event));
     }
 
     public void generateStatusReport() {
@@ -0,0 +1,145 @@
+package core;
+
+import core.managers.LocationIndex;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+// Which device events a subscriber is interested in. Each dimension (event type, device,
+// room, capability) is either unrestricted or a set of accepted values, and a minimum
+// severity can be set; an event matches when it is accepted by every restriction. A room
+// restriction is a location path and also accepts every room below it, so "Floor 2" covers
+// "Floor 2/Bedroom".
+public final class Subscription {
+
+    private static final Subscription ALL = new Subscription(Collections.emptySet(), Collections.emptySet(),
+            Collections.emptySet(), Collections.emptySet(), EventType.Severity.INFO);
+
+    private final Set<EventType> eventTypes;
+    private final Set<Integer> deviceIds;
+    private final Set<String> rooms;
+    private final Set<Capability> capabilities;
+    private final EventType.Severity minimumSeverity;
+
+    private Subscription(Set<EventType> eventTypes, Set<Integer> deviceIds, Set<String> rooms,
+                         Set<Capability> capabilities, EventType.Severity minimumSeverity) {
+        this.eventTypes = eventTypes;
+        this.deviceIds = deviceIds;
+        this.rooms = rooms;
+        this.capabilities = capabilities;
+        this.minimumSeverity = minimumSeverity;
+    }
+
+    public static Subscription all() {
+        return ALL;
+    }
+
+    public static Subscription eventTypes(EventType... types) {
+        return ALL.andEventTypes(types);
+    }
+
+    public static Subscription devices(SmartDevice... devices) {
+        return ALL.andDevices(devices);
+    }
+
+    public static Subscription rooms(String... rooms) {
+        return ALL.andRooms(rooms);
+    }
+
+    public static Subscription capabilities(Capability... capabilities) {
+        return ALL.andCapabilities(capabilities);
+    }
+
+    public static Subscription atLeast(EventType.Severity severity) {
+        return ALL.andAtLeast(severity);
+    }
+
+    // The and* methods return a narrower copy that also restricts the given dimension
+    public Subscription andEventTypes(EventType... types) {
+        return new Subscription(Collections.unmodifiableSet(new HashSet<>(Arrays.asList(types))),
+                deviceIds, rooms, capabilities, minimumSeverity);
+    }
+
+    public Subscription andDevices(SmartDevice... devices) {
+        Set<Integer> ids = new HashSet<>();
+        for (SmartDevice device : devices) {
+            ids.add(device.getId());
+        }
+        return new Subscription(eventTypes, Collections.unmodifiableSet(ids), rooms, capabilities, minimumSeverity);
+    }
+
+    public Subscription andRooms(String... rooms) {
+        Set<String> paths = new HashSet<>();
+        for (String room : rooms) {
+            paths.add(LocationIndex.normalize(room));
+        }
+        return new Subscription(eventTypes, deviceIds, Collections.unmodifiableSet(paths), capabilities,
+                minimumSeverity);
+    }
+
+    public Subscription andCapabilities(Capability... capabilities) {
+        Set<Capability> set = EnumSet.noneOf(Capability.class);
+        set.addAll(Arrays.asList(capabilities));
+        return new Subscription(eventTypes, deviceIds, rooms, Collections.unmodifiableSet(set), minimumSeverity);
+    }
+
+    public Subscription andAtLeast(EventType.Severity severity) {
+        return new Subscription(eventTypes, deviceIds, rooms, capabilities, severity);
+    }
+
+    // Empty sets mean the dimension is not restricted
+    public Set<EventType> getEventTypes() {
+        return eventTypes;
+    }
+
+    public Set<Integer> getDeviceIds() {
+        return deviceIds;
+    }
+
+    public Set<String> getRooms() {
+        return rooms;
+    }
+
+    public Set<Capability> getCapabilities() {
+        return capabilities;
+    }
+
+    // INFO means every severity is accepted
+    public EventType.Severity getMinimumSeverity() {
+        return minimumSeverity;
+    }
+
+    // room and deviceCapabilities describe the registered device the event came from
+    public boolean matches(DeviceEvent event, String room, Set<Capability> deviceCapabilities) {
+        return event.getType().getSeverity().compareTo(minimumSeverity) >= 0
+                && (eventTypes.isEmpty() || eventTypes.contains(event.getType()))
+                && (deviceIds.isEmpty() || deviceIds.contains(event.getDeviceId()))
+                && (rooms.isEmpty() || matchingRoom(room) != null)
+                && (capabilities.isEmpty() || !Collections.disjoint(capabilities, deviceCapabilities));
+    }
+
+    // The deepest subscribed location that is the room or one of its ancestors, found by
+    // walking up the room's path; null if there is none
+    public String matchingRoom(String room) {
+        for (String path = room; path != null; path = parentOf(path)) {
+            if (rooms.contains(path)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    public static String parentOf(String path) {
+        int end = path.lastIndexOf(LocationIndex.SEPARATOR);
+        return end < 0 ? null : path.substring(0, end);
+    }
+
+    @Override
+    public String toString() {
+        return "Subscription[types=" + eventTypes + ", devices=" + deviceIds + ", rooms=" + rooms
+                + ", capabilities=" + capabilities + ", severity>=" + minimumSeverity + "]";
+    }
+}
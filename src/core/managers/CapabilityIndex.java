@@ -0,0 +1,113 @@
+package core.managers;
+
+import core.Capability;
+import core.DeviceComponent;
+import core.SmartDevice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Maps each capability to the objects providing it, resolved at registration and updated
+// when a component is attached later. A component attached to the device provides its
+// capability; other capabilities are found by walking the decorator chain of the registered
+// device, where the outermost layer wins.
+public class CapabilityIndex {
+
+    // capability -> registered device -> provider
+    private final Map<Capability, Map<SmartDevice, Object>> providers;
+    // capability -> room -> registered device -> provider
+    private final Map<Capability, Map<String, Map<SmartDevice, Object>>> roomProviders;
+    // registered device -> every capability in its chain
+    private final Map<SmartDevice, Set<Capability>> capabilitiesByDevice;
+
+    public CapabilityIndex() {
+        this.providers = new EnumMap<>(Capability.class);
+        this.roomProviders = new EnumMap<>(Capability.class);
+        for (Capability capability : Capability.values()) {
+            providers.put(capability, new ConcurrentHashMap<>());
+            roomProviders.put(capability, new ConcurrentHashMap<>());
+        }
+        this.capabilitiesByDevice = new ConcurrentHashMap<>();
+    }
+
+    public void index(SmartDevice device, String room) {
+        Set<Capability> capabilities = EnumSet.noneOf(Capability.class);
+        for (Capability capability : Capability.values()) {
+            DeviceComponent component = device.getComponent(capability);
+            if (component != null) {
+                capabilities.add(capability);
+                addProvider(capability, device, room, component);
+            }
+        }
+        for (SmartDevice layer = device; layer != null; layer = layer.getDecoratedDevice()) {
+            for (Capability capability : layer.getCapabilities()) {
+                capabilities.add(capability);
+                addProvider(capability, device, room, layer);
+            }
+        }
+        capabilitiesByDevice.put(device, Collections.unmodifiableSet(capabilities));
+    }
+
+    // A component takes over its capability from any decorator layer, as it does in index()
+    public void addComponent(SmartDevice device, String room, DeviceComponent component) {
+        Capability capability = component.getCapability();
+        providers.get(capability).put(device, component);
+        roomProviders.get(capability)
+                .computeIfAbsent(room, k -> new ConcurrentHashMap<>())
+                .put(device, component);
+        capabilitiesByDevice.computeIfPresent(device, (k, capabilities) -> {
+            Set<Capability> updated = EnumSet.of(capability);
+            updated.addAll(capabilities);
+            return Collections.unmodifiableSet(updated);
+        });
+    }
+
+    private void addProvider(Capability capability, SmartDevice device, String room, Object provider) {
+        if (providers.get(capability).putIfAbsent(device, provider) == null) {
+            roomProviders.get(capability)
+                    .computeIfAbsent(room, k -> new ConcurrentHashMap<>())
+                    .put(device, provider);
+        }
+    }
+
+    public void remove(SmartDevice device, String room) {
+        capabilitiesByDevice.remove(device);
+        for (Capability capability : Capability.values()) {
+            if (providers.get(capability).remove(device) != null) {
+                roomProviders.get(capability).computeIfPresent(room, (k, roomMap) -> {
+                    roomMap.remove(device);
+                    return roomMap.isEmpty() ? null : roomMap;
+                });
+            }
+        }
+    }
+
+    // Registered (outermost) devices having the capability somewhere in their chain
+    public List<SmartDevice> getDevices(Capability capability) {
+        return new ArrayList<>(providers.get(capability).keySet());
+    }
+
+    public List<Object> getProviders(Capability capability) {
+        return new ArrayList<>(providers.get(capability).values());
+    }
+
+    public List<Object> getProviders(Capability capability, String room) {
+        Map<SmartDevice, Object> roomMap = roomProviders.get(capability).get(room);
+        return roomMap == null ? Collections.emptyList() : new ArrayList<>(roomMap.values());
+    }
+
+    public Set<Capability> getCapabilities(SmartDevice device) {
+        Set<Capability> capabilities = capabilitiesByDevice.get(device);
+        return capabilities == null ? Collections.emptySet() : capabilities;
+    }
+
+    public Object getProvider(SmartDevice device, Capability capability) {
+        return providers.get(capability).get(device);
+    }
+}
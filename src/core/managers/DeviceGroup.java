@@ -0,0 +1,47 @@
+package core.managers;
+
+import java.util.BitSet;
+
+// Named set of devices held as a bitset over registry slots. Membership changes copy the
+// bitset, so readers resolving the group never take a lock.
+public class DeviceGroup {
+
+    private final String name;
+    private volatile BitSet members;
+
+    public DeviceGroup(String name) {
+        this.name = name;
+        this.members = new BitSet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized void add(int slot) {
+        BitSet updated = (BitSet) members.clone();
+        updated.set(slot);
+        members = updated;
+    }
+
+    public synchronized void remove(int slot) {
+        if (members.get(slot)) {
+            BitSet updated = (BitSet) members.clone();
+            updated.clear(slot);
+            members = updated;
+        }
+    }
+
+    public boolean contains(int slot) {
+        return members.get(slot);
+    }
+
+    public int size() {
+        return members.cardinality();
+    }
+
+    // Current members; callers must not modify the returned bitset
+    BitSet getMembers() {
+        return members;
+    }
+}
@@ -1,48 +1,222 @@
 package core.managers;
 
+import core.Capability;
+import core.DeviceComponent;
 import core.SmartDevice;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DeviceManager {
-    private final List<SmartDevice> devices;
-    private final Map<String, List<SmartDevice>> roomDevices;
+    private final DeviceRegistry registry;
+    private final CapabilityIndex capabilityIndex;
+    private final LocationIndex locationIndex;
+    private final Map<String, DeviceGroup> groups;
+    // Serializes register/move/remove so the registry and the indexes change together;
+    // lookups do not take it
+    private final Object topologyLock;
 
     public DeviceManager() {
-        this.devices = new ArrayList<>();
-        this.roomDevices = new HashMap<>();
+        this.topologyLock = new Object();
+        this.registry = new DeviceRegistry();
+        this.capabilityIndex = new CapabilityIndex();
+        this.locationIndex = new LocationIndex();
+        this.groups = new ConcurrentHashMap<>();
     }
 
-    public void registerDevice(SmartDevice device, String room) {
-        devices.add(device);
-        roomDevices.computeIfAbsent(room, k -> new ArrayList<>()).add(device);
-        System.out.println("Device " + device.getName() + " registered in " + room);
+    // Room paths are normalized once here, so the registry and the indexes agree on them
+    public boolean registerDevice(SmartDevice device, String room) {
+        room = LocationIndex.normalize(room);
+        synchronized (topologyLock) {
+            if (registry.register(device, room)) {
+                capabilityIndex.index(device, room);
+                locationIndex.place(device, room);
+                System.out.println("Device " + device.getName() + " registered in " + room);
+                return true;
+            }
+        }
+        System.out.println("Device name already registered: " + device.getName());
+        return false;
     }
 
-    public void removeDevice(SmartDevice device) {
-        devices.remove(device);
-        roomDevices.values().forEach(roomDeviceList -> roomDeviceList.remove(device));
-        System.out.println("Device " + device.getName() + " removed");
+    public boolean removeDevice(SmartDevice device) {
+        synchronized (topologyLock) {
+            String room = registry.getRoom(device);
+            int slot = registry.getSlot(device);
+            if (slot >= 0) {
+                // Clear group membership before the slot can be reused by another device
+                groups.values().forEach(group -> group.remove(slot));
+            }
+            if (registry.remove(device)) {
+                capabilityIndex.remove(device, room);
+                locationIndex.remove(device);
+                System.out.println("Device " + device.getName() + " removed");
+                return true;
+            }
+        }
+        return false;
     }
 
+    // Rooms are location paths such as "Floor 2/Bedroom"; moving only updates the
+    // indexes for the old and new location instead of rescanning every room
+    public boolean moveDevice(SmartDevice device, String newRoom) {
+        newRoom = LocationIndex.normalize(newRoom);
+        String oldRoom;
+        synchronized (topologyLock) {
+            oldRoom = registry.getRoom(device);
+            if (oldRoom != null && registry.move(device, newRoom)) {
+                capabilityIndex.remove(device, oldRoom);
+                capabilityIndex.index(device, newRoom);
+                locationIndex.move(device, newRoom);
+                System.out.println("Device " + device.getName() + " moved from " + oldRoom + " to " + newRoom);
+                return true;
+            }
+        }
+        System.out.println("Device not registered: " + device.getName());
+        return false;
+    }
+
+    public List<SmartDevice> getDevicesUnder(String location) {
+        return locationIndex.getDevicesUnder(location);
+    }
+
+    // The devices under the location as of one registry epoch, grouped by room
+    public RegistrySnapshot getLocationSnapshot(String location) {
+        synchronized (topologyLock) {
+            List<SmartDevice> devices = locationIndex.getDevicesUnder(location);
+            Map<String, List<SmartDevice>> roomDevices = new LinkedHashMap<>();
+            for (SmartDevice device : devices) {
+                roomDevices.computeIfAbsent(registry.getRoom(device), k -> new ArrayList<>()).add(device);
+            }
+            return new RegistrySnapshot(registry.getEpoch(), devices, roomDevices);
+        }
+    }
+
+    public int countDevicesUnder(String location) {
+        return locationIndex.countDevicesUnder(location);
+    }
+
+    public List<String> getChildLocations(String location) {
+        return locationIndex.getChildLocations(location);
+    }
+
+    // The lists and maps below come from the current registry snapshot: they are
+    // immutable and shared, and only rebuilt after a device is registered or removed
     public List<SmartDevice> getDevicesInRoom(String room) {
-        return roomDevices.getOrDefault(room, new ArrayList<>());
+        return registry.snapshot().getDevicesInRoom(LocationIndex.normalize(room));
     }
 
     public List<SmartDevice> getAllDevices() {
-        return new ArrayList<>(devices);
+        return registry.snapshot().getDevices();
     }
 
     public Map<String, List<SmartDevice>> getRoomDevices() {
-        return new HashMap<>(roomDevices);
+        return registry.snapshot().getRoomDevices();
+    }
+
+    public RegistrySnapshot getSnapshot() {
+        return registry.snapshot();
+    }
+
+    public long getEpoch() {
+        return registry.getEpoch();
+    }
+
+    public DeviceGroup createGroup(String groupName) {
+        return groups.computeIfAbsent(groupName, DeviceGroup::new);
+    }
+
+    public void removeGroup(String groupName) {
+        groups.remove(groupName);
+    }
+
+    // Under the topology lock, so a removal cannot release the slot between reading and setting it
+    public boolean addToGroup(String groupName, SmartDevice device) {
+        synchronized (topologyLock) {
+            int slot = registry.getSlot(device);
+            if (slot >= 0) {
+                createGroup(groupName).add(slot);
+                return true;
+            }
+        }
+        System.out.println("Device not registered: " + device.getName());
+        return false;
+    }
+
+    public void removeFromGroup(String groupName, SmartDevice device) {
+        synchronized (topologyLock) {
+            DeviceGroup group = groups.get(groupName);
+            int slot = registry.getSlot(device);
+            if (group != null && slot >= 0) {
+                group.remove(slot);
+            }
+        }
+    }
+
+    public List<SmartDevice> getGroupMembers(String groupName) {
+        DeviceGroup group = groups.get(groupName);
+        if (group == null) {
+            return new ArrayList<>();
+        }
+        BitSet members = group.getMembers();
+        List<SmartDevice> result = new ArrayList<>(members.cardinality());
+        for (int slot = members.nextSetBit(0); slot >= 0; slot = members.nextSetBit(slot + 1)) {
+            SmartDevice device = registry.getDeviceAtSlot(slot);
+            if (device != null) {
+                result.add(device);
+            }
+        }
+        return result;
+    }
+
+    // Registered devices with the capability, as opposed to the providers returned by findByCapability
+    public List<SmartDevice> getDevicesWithCapability(Capability capability) {
+        return capabilityIndex.getDevices(capability);
+    }
+
+    public List<Object> findByCapability(Capability capability) {
+        return capabilityIndex.getProviders(capability);
+    }
+
+    public List<Object> findByCapability(Capability capability, String room) {
+        return capabilityIndex.getProviders(capability, LocationIndex.normalize(room));
+    }
+
+    // The registered device an event came from, whichever layer raised it
+    public SmartDevice findDeviceById(int deviceId) {
+        return registry.findById(deviceId);
+    }
+
+    // Indexes a component attached after registration; the device may be any layer of the
+    // registered decorator chain. Does nothing for a device that is not registered.
+    public void addComponent(SmartDevice device, DeviceComponent component) {
+        synchronized (topologyLock) {
+            SmartDevice registered = registry.findById(device.getId());
+            String room = registered == null ? null : registry.getRoom(registered);
+            if (room != null) {
+                capabilityIndex.addComponent(registered, room, component);
+            }
+        }
+    }
+
+    // Every capability of a registered device, across its decorator chain
+    public Set<Capability> getCapabilities(SmartDevice device) {
+        return capabilityIndex.getCapabilities(device);
     }
 
     public SmartDevice findDeviceByName(String deviceName) {
-        return devices.stream()
-                .filter(device -> device.getName().equals(deviceName))
-                .findFirst()
-                .orElse(null);
+        return registry.findByName(deviceName);
+    }
+
+    public SmartDevice findDeviceByNameIgnoreCase(String deviceName) {
+        return registry.findByNameIgnoreCase(deviceName);
+    }
+
+    public String getDeviceRoom(SmartDevice device) {
+        return registry.getRoom(device);
     }
-} 
\ No newline at end of file
+}
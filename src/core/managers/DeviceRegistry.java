@@ -0,0 +1,245 @@
+package core.managers;
+
+import core.SmartDevice;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Hash-indexed device registry. Lookups by name, case-insensitive name, id, device and room
+// are all O(1) and safe to call concurrently with register/remove.
+// Every successful register/remove/move bumps the epoch; the immutable snapshot used for
+// iteration is rebuilt lazily the first time it is read after a change.
+// Each registered device also owns a small integer slot (reused after removal) so device
+// sets can be kept as bitsets.
+public class DeviceRegistry {
+
+    private static class Registration {
+        final SmartDevice device;
+        final String room;
+        final long sequence;
+        final int slot;
+
+        Registration(SmartDevice device, String room, long sequence, int slot) {
+            this.device = device;
+            this.room = room;
+            this.sequence = sequence;
+            this.slot = slot;
+        }
+    }
+
+    private final Map<String, SmartDevice> devicesByName;
+    // Names differing only in case share a key; the earliest registered of them is found first
+    private final Map<String, List<SmartDevice>> devicesByLowerCaseName;
+    private final Map<Integer, SmartDevice> devicesById;
+    private final Map<SmartDevice, Registration> registrations;
+    private final Map<String, Set<SmartDevice>> devicesByRoom;
+    private final AtomicLong sequence;
+    private final AtomicLong epoch;
+    private volatile RegistrySnapshot snapshot;
+    private volatile AtomicReferenceArray<SmartDevice> slots;
+    private final BitSet freeSlots;
+    private int nextSlot;
+
+    public DeviceRegistry() {
+        this.devicesByName = new ConcurrentHashMap<>();
+        this.devicesByLowerCaseName = new ConcurrentHashMap<>();
+        this.devicesById = new ConcurrentHashMap<>();
+        this.registrations = new ConcurrentHashMap<>();
+        this.devicesByRoom = new ConcurrentHashMap<>();
+        this.sequence = new AtomicLong();
+        this.epoch = new AtomicLong();
+        this.snapshot = new RegistrySnapshot(0, new ArrayList<>(), new LinkedHashMap<>());
+        this.slots = new AtomicReferenceArray<>(64);
+        this.freeSlots = new BitSet();
+        this.nextSlot = 0;
+    }
+
+    // Returns false if a device with the same name is already registered
+    public boolean register(SmartDevice device, String room) {
+        if (devicesByName.putIfAbsent(device.getName(), device) != null) {
+            return false;
+        }
+        devicesByLowerCaseName.compute(toKey(device.getName()), (k, sameKey) -> {
+            List<SmartDevice> devices = sameKey == null ? new ArrayList<>(1) : new ArrayList<>(sameKey);
+            devices.add(device);
+            return Collections.unmodifiableList(devices);
+        });
+        devicesById.put(device.getId(), device);
+        registrations.put(device, new Registration(device, room, sequence.incrementAndGet(), allocateSlot(device)));
+        devicesByRoom.computeIfAbsent(room, k -> ConcurrentHashMap.newKeySet()).add(device);
+        epoch.incrementAndGet();
+        return true;
+    }
+
+    // Returns false if the device was not registered
+    public boolean remove(SmartDevice device) {
+        Registration registration = registrations.remove(device);
+        if (registration == null) {
+            return false;
+        }
+        devicesByName.remove(device.getName(), device);
+        devicesByLowerCaseName.computeIfPresent(toKey(device.getName()), (k, sameKey) -> {
+            List<SmartDevice> devices = new ArrayList<>(sameKey);
+            devices.remove(device);
+            return devices.isEmpty() ? null : Collections.unmodifiableList(devices);
+        });
+        devicesById.remove(device.getId(), device);
+        removeFromRoom(device, registration.room);
+        releaseSlot(registration.slot);
+        epoch.incrementAndGet();
+        return true;
+    }
+
+    // Moves a registered device to another room, keeping its registration order.
+    // Returns false if the device is not registered.
+    public boolean move(SmartDevice device, String newRoom) {
+        Registration previous = registrations.get(device);
+        if (previous == null) {
+            return false;
+        }
+        Registration moved = new Registration(device, newRoom, previous.sequence, previous.slot);
+        if (!registrations.replace(device, previous, moved)) {
+            return false;
+        }
+        removeFromRoom(device, previous.room);
+        devicesByRoom.computeIfAbsent(newRoom, k -> ConcurrentHashMap.newKeySet()).add(device);
+        epoch.incrementAndGet();
+        return true;
+    }
+
+    public SmartDevice findByName(String deviceName) {
+        return deviceName == null ? null : devicesByName.get(deviceName);
+    }
+
+    // An exact-case match wins; otherwise the earliest registered device whose name differs
+    // only in case
+    public SmartDevice findByNameIgnoreCase(String deviceName) {
+        if (deviceName == null) {
+            return null;
+        }
+        SmartDevice exact = devicesByName.get(deviceName);
+        if (exact != null) {
+            return exact;
+        }
+        List<SmartDevice> sameKey = devicesByLowerCaseName.get(toKey(deviceName));
+        return sameKey == null ? null : sameKey.get(0);
+    }
+
+    // Every layer of a decorated device shares its id, so this finds the registered (outermost)
+    // device for an event raised by any layer
+    public SmartDevice findById(int deviceId) {
+        return devicesById.get(deviceId);
+    }
+
+    public boolean contains(SmartDevice device) {
+        return registrations.containsKey(device);
+    }
+
+    public String getRoom(SmartDevice device) {
+        Registration registration = registrations.get(device);
+        return registration == null ? null : registration.room;
+    }
+
+    // Returns -1 if the device is not registered
+    public int getSlot(SmartDevice device) {
+        Registration registration = registrations.get(device);
+        return registration == null ? -1 : registration.slot;
+    }
+
+    public SmartDevice getDeviceAtSlot(int slot) {
+        AtomicReferenceArray<SmartDevice> current = slots;
+        return slot >= 0 && slot < current.length() ? current.get(slot) : null;
+    }
+
+    public Set<String> getRooms() {
+        return devicesByRoom.keySet();
+    }
+
+    public int size() {
+        return devicesByName.size();
+    }
+
+    public long getEpoch() {
+        return epoch.get();
+    }
+
+    public RegistrySnapshot snapshot() {
+        RegistrySnapshot current = snapshot;
+        if (current.getEpoch() == epoch.get()) {
+            return current;
+        }
+        return rebuildSnapshot();
+    }
+
+    private synchronized RegistrySnapshot rebuildSnapshot() {
+        // Read the epoch first: a write racing with the rebuild leaves the snapshot
+        // marked stale, so the next reader rebuilds again
+        long currentEpoch = epoch.get();
+        if (snapshot.getEpoch() == currentEpoch) {
+            return snapshot;
+        }
+
+        List<Registration> ordered = new ArrayList<>(registrations.values());
+        ordered.sort(Comparator.comparingLong(r -> r.sequence));
+
+        List<SmartDevice> devices = new ArrayList<>(ordered.size());
+        Map<String, List<SmartDevice>> roomLists = new LinkedHashMap<>();
+        for (Registration registration : ordered) {
+            devices.add(registration.device);
+            roomLists.computeIfAbsent(registration.room, k -> new ArrayList<>()).add(registration.device);
+        }
+
+        Map<String, List<SmartDevice>> roomDevices = new LinkedHashMap<>();
+        roomLists.forEach((room, list) -> roomDevices.put(room, Collections.unmodifiableList(list)));
+
+        snapshot = new RegistrySnapshot(currentEpoch, devices, roomDevices);
+        return snapshot;
+    }
+
+    private synchronized int allocateSlot(SmartDevice device) {
+        int slot = freeSlots.nextSetBit(0);
+        if (slot >= 0) {
+            freeSlots.clear(slot);
+        } else {
+            slot = nextSlot++;
+        }
+
+        AtomicReferenceArray<SmartDevice> current = slots;
+        if (slot >= current.length()) {
+            AtomicReferenceArray<SmartDevice> grown = new AtomicReferenceArray<>(current.length() * 2);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            slots = grown;
+            current = grown;
+        }
+        current.set(slot, device);
+        return slot;
+    }
+
+    private synchronized void releaseSlot(int slot) {
+        slots.set(slot, null);
+        freeSlots.set(slot);
+    }
+
+    private void removeFromRoom(SmartDevice device, String room) {
+        devicesByRoom.computeIfPresent(room, (k, roomSet) -> {
+            roomSet.remove(device);
+            return roomSet.isEmpty() ? null : roomSet;
+        });
+    }
+
+    private static String toKey(String deviceName) {
+        return deviceName.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,183 @@
+package core.managers;
+
+import core.SmartDevice;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Tree of locations (home / floor / room / zone) addressed by "/"-separated paths such as
+// "Floor 2/Bedroom/Desk". Every node keeps the number of devices in its subtree, so counts
+// are O(1) and placing, moving or removing a device only touches the nodes on its path.
+// Locations left without devices are pruned, so only occupied locations are listed.
+public class LocationIndex {
+
+    public static final String SEPARATOR = "/";
+
+    private static final class Node {
+        final String name;
+        final Node parent;
+        final Map<String, Node> children;
+        final Set<SmartDevice> devices;
+        final AtomicInteger subtreeCount;
+
+        Node(String name, Node parent) {
+            this.name = name;
+            this.parent = parent;
+            this.children = new ConcurrentHashMap<>();
+            this.devices = ConcurrentHashMap.newKeySet();
+            this.subtreeCount = new AtomicInteger();
+        }
+    }
+
+    private final Node root;
+    private final Map<SmartDevice, Node> nodeByDevice;
+
+    public LocationIndex() {
+        this.root = new Node("", null);
+        this.nodeByDevice = new ConcurrentHashMap<>();
+    }
+
+    public synchronized void place(SmartDevice device, String location) {
+        Node previous = nodeByDevice.get(device);
+        if (previous != null) {
+            detach(device, previous);
+        }
+        Node node = getOrCreate(location);
+        node.devices.add(device);
+        adjustCounts(node, 1);
+        nodeByDevice.put(device, node);
+    }
+
+    public synchronized void move(SmartDevice device, String newLocation) {
+        place(device, newLocation);
+    }
+
+    public synchronized void remove(SmartDevice device) {
+        Node node = nodeByDevice.remove(device);
+        if (node != null) {
+            detach(device, node);
+        }
+    }
+
+    // The canonical form of a path: segments trimmed, empty segments dropped, joined by
+    // SEPARATOR, so "Floor 2//Bedroom/ " and "Floor 2/Bedroom" name the same location
+    public static String normalize(String location) {
+        return location == null ? null : String.join(SEPARATOR, split(location));
+    }
+
+    public String getLocation(SmartDevice device) {
+        Node node = nodeByDevice.get(device);
+        return node == null ? null : pathOf(node);
+    }
+
+    // All devices at the location or anywhere below it
+    public List<SmartDevice> getDevicesUnder(String location) {
+        Node start = find(location);
+        if (start == null) {
+            return Collections.emptyList();
+        }
+
+        List<SmartDevice> result = new ArrayList<>(start.subtreeCount.get());
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(start);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            result.addAll(node.devices);
+            for (Node child : node.children.values()) {
+                pending.push(child);
+            }
+        }
+        return result;
+    }
+
+    public int countDevicesUnder(String location) {
+        Node node = find(location);
+        return node == null ? 0 : node.subtreeCount.get();
+    }
+
+    public List<String> getChildLocations(String location) {
+        Node node = find(location);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (Node child : node.children.values()) {
+            result.add(pathOf(child));
+        }
+        return result;
+    }
+
+    private void detach(SmartDevice device, Node node) {
+        if (node.devices.remove(device)) {
+            adjustCounts(node, -1);
+            prune(node);
+        }
+    }
+
+    // Unlinks the emptied node and any ancestors it leaves empty; a zero count means the
+    // whole subtree is empty
+    private void prune(Node node) {
+        for (Node current = node; current.parent != null && current.subtreeCount.get() == 0;
+             current = current.parent) {
+            current.parent.children.remove(current.name, current);
+        }
+    }
+
+    private void adjustCounts(Node node, int delta) {
+        for (Node current = node; current != null; current = current.parent) {
+            current.subtreeCount.addAndGet(delta);
+        }
+    }
+
+    private Node getOrCreate(String location) {
+        Node node = root;
+        for (String segment : split(location)) {
+            Node parent = node;
+            node = parent.children.computeIfAbsent(segment, k -> new Node(k, parent));
+        }
+        return node;
+    }
+
+    private Node find(String location) {
+        Node node = root;
+        for (String segment : split(location)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    private static List<String> split(String location) {
+        List<String> segments = new ArrayList<>();
+        if (location == null) {
+            return segments;
+        }
+        for (String segment : location.split(SEPARATOR)) {
+            String trimmed = segment.trim();
+            if (!trimmed.isEmpty()) {
+                segments.add(trimmed);
+            }
+        }
+        return segments;
+    }
+
+    private static String pathOf(Node node) {
+        StringBuilder sb = new StringBuilder();
+        for (Node current = node; current.parent != null; current = current.parent) {
+            sb.insert(0, current.name);
+            if (current.parent.parent != null) {
+                sb.insert(0, SEPARATOR);
+            }
+        }
+        return sb.toString();
+    }
+}
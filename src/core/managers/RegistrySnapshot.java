@@ -0,0 +1,38 @@
+package core.managers;
+
+import core.SmartDevice;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Immutable view of the registry at a given epoch. Shared by all readers until the
+// next register/remove, so iterating it never allocates a copy.
+public final class RegistrySnapshot {
+
+    private final long epoch;
+    private final List<SmartDevice> devices;
+    private final Map<String, List<SmartDevice>> roomDevices;
+
+    RegistrySnapshot(long epoch, List<SmartDevice> devices, Map<String, List<SmartDevice>> roomDevices) {
+        this.epoch = epoch;
+        this.devices = Collections.unmodifiableList(devices);
+        this.roomDevices = Collections.unmodifiableMap(roomDevices);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public List<SmartDevice> getDevices() {
+        return devices;
+    }
+
+    public List<SmartDevice> getDevicesInRoom(String room) {
+        return roomDevices.getOrDefault(room, Collections.emptyList());
+    }
+
+    public Map<String, List<SmartDevice>> getRoomDevices() {
+        return roomDevices;
+    }
+}
@@ -0,0 +1,133 @@
+package core.managers;
+
+import core.DeviceCommand;
+import core.SmartDevice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A named set of device actions applied together, e.g. "Movie night".
+// Actions are compiled into typed commands when they are added. Device names are resolved
+// against the registry the first time the scene is applied and the result is cached until
+// a device is registered, removed or moved, so applying a scene does no lookups or parsing.
+public class Scene {
+
+    // Resolved form of a scene: one entry per device, holding that device's commands in the
+    // order they were added
+    public static final class Plan {
+        private final long epoch;
+        private final SmartDevice[] devices;
+        private final DeviceCommand[][] commands;
+        private final List<String> unresolved;
+
+        Plan(long epoch, SmartDevice[] devices, DeviceCommand[][] commands, List<String> unresolved) {
+            this.epoch = epoch;
+            this.devices = devices;
+            this.commands = commands;
+            this.unresolved = Collections.unmodifiableList(unresolved);
+        }
+
+        public long getEpoch() {
+            return epoch;
+        }
+
+        public int size() {
+            return devices.length;
+        }
+
+        public SmartDevice getDevice(int index) {
+            return devices[index];
+        }
+
+        public DeviceCommand[] getCommands(int index) {
+            return commands[index];
+        }
+
+        // Device names in the scene that are not currently registered
+        public List<String> getUnresolved() {
+            return unresolved;
+        }
+    }
+
+    private static final class Action {
+        final String deviceName;
+        final DeviceCommand command;
+
+        Action(String deviceName, DeviceCommand command) {
+            this.deviceName = deviceName;
+            this.command = command;
+        }
+    }
+
+    private final String name;
+    // Guarded by this scene
+    private final List<Action> actions;
+    private volatile Plan plan;
+
+    public Scene(String name) {
+        this.name = name;
+        this.actions = new ArrayList<>();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void addAction(String deviceName, String action, String... params) {
+        addAction(deviceName, DeviceCommand.compile(action, params));
+    }
+
+    public synchronized void addAction(String deviceName, DeviceCommand command) {
+        actions.add(new Action(deviceName, command));
+        plan = null;
+    }
+
+    public synchronized int getActionCount() {
+        return actions.size();
+    }
+
+    // Returns the cached plan, recompiling it if the scene or the registry changed since
+    public Plan compile(DeviceManager deviceManager) {
+        Plan current = plan;
+        if (current != null && current.getEpoch() == deviceManager.getEpoch()) {
+            return current;
+        }
+        return recompile(deviceManager);
+    }
+
+    private synchronized Plan recompile(DeviceManager deviceManager) {
+        // Read the epoch first so a registry change during compilation forces another pass
+        long epoch = deviceManager.getEpoch();
+        if (plan != null && plan.getEpoch() == epoch) {
+            return plan;
+        }
+
+        Map<SmartDevice, List<DeviceCommand>> byDevice = new LinkedHashMap<>();
+        List<String> unresolved = new ArrayList<>();
+        for (Action action : actions) {
+            SmartDevice device = deviceManager.findDeviceByName(action.deviceName);
+            if (device == null) {
+                if (!unresolved.contains(action.deviceName)) {
+                    unresolved.add(action.deviceName);
+                }
+                continue;
+            }
+            byDevice.computeIfAbsent(device, k -> new ArrayList<>()).add(action.command);
+        }
+
+        SmartDevice[] devices = new SmartDevice[byDevice.size()];
+        DeviceCommand[][] commands = new DeviceCommand[byDevice.size()][];
+        int i = 0;
+        for (Map.Entry<SmartDevice, List<DeviceCommand>> entry : byDevice.entrySet()) {
+            devices[i] = entry.getKey();
+            commands[i] = entry.getValue().toArray(new DeviceCommand[0]);
+            i++;
+        }
+
+        plan = new Plan(epoch, devices, commands, unresolved);
+        return plan;
+    }
+}
@@ -0,0 +1,33 @@
+package core.managers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SceneManager {
+    private final Map<String, Scene> scenes;
+
+    public SceneManager() {
+        this.scenes = new ConcurrentHashMap<>();
+    }
+
+    public void defineScene(Scene scene) {
+        scenes.put(scene.getName(), scene);
+        System.out.println("Scene " + scene.getName() + " defined with " + scene.getActionCount() + " actions");
+    }
+
+    public void removeScene(String sceneName) {
+        if (scenes.remove(sceneName) != null) {
+            System.out.println("Scene " + sceneName + " removed");
+        }
+    }
+
+    public Scene getScene(String sceneName) {
+        return sceneName == null ? null : scenes.get(sceneName);
+    }
+
+    public List<String> getSceneNames() {
+        return new ArrayList<>(scenes.keySet());
+    }
+}
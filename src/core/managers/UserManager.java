@@ -3,12 +3,15 @@ package core.managers;
 import core.User;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class UserManager {
     private final List<User> registeredUsers;
 
     public UserManager() {
-        this.registeredUsers = new ArrayList<>();
+        // Only the registry of users; notifications find their recipients through
+        // NotificationService's subscription index
+        this.registeredUsers = new CopyOnWriteArrayList<>();
     }
 
     public void registerUser(User user) {
@@ -0,0 +1,175 @@
+package core.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Rate limits commands per target device and per source using token buckets. Commands over
+// the limit are either shed or queued until a token frees up, depending on the policy.
+// With no limits configured every command is admitted without touching a bucket.
+public class AdmissionController {
+
+    public enum OverloadPolicy {
+        SHED,
+        QUEUE
+    }
+
+    public static final long REJECTED = -1;
+
+    private static final class RateLimit {
+        final double ratePerSecond;
+        final int burst;
+
+        RateLimit(double ratePerSecond, int burst) {
+            this.ratePerSecond = ratePerSecond;
+            this.burst = burst;
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder admitted = new LongAdder();
+        final LongAdder queued = new LongAdder();
+        final LongAdder shed = new LongAdder();
+    }
+
+    private final Map<String, RateLimit> deviceLimits;
+    private final Map<String, RateLimit> sourceLimits;
+    private final Map<String, TokenBucket> deviceBuckets;
+    private final Map<String, TokenBucket> sourceBuckets;
+    private final Map<String, Counters> deviceCounters;
+    private volatile RateLimit defaultDeviceLimit;
+    private volatile RateLimit defaultSourceLimit;
+    private volatile OverloadPolicy policy;
+    private volatile long maxQueueDelayNanos;
+    private volatile boolean enabled;
+
+    public AdmissionController() {
+        this.deviceLimits = new ConcurrentHashMap<>();
+        this.sourceLimits = new ConcurrentHashMap<>();
+        this.deviceBuckets = new ConcurrentHashMap<>();
+        this.sourceBuckets = new ConcurrentHashMap<>();
+        this.deviceCounters = new ConcurrentHashMap<>();
+        this.policy = OverloadPolicy.SHED;
+        this.maxQueueDelayNanos = TimeUnit.SECONDS.toNanos(1);
+        this.enabled = false;
+    }
+
+    public void setDefaultDeviceLimit(double ratePerSecond, int burst) {
+        defaultDeviceLimit = new RateLimit(ratePerSecond, burst);
+        deviceBuckets.clear();
+        enabled = true;
+    }
+
+    public void setDeviceLimit(String deviceName, double ratePerSecond, int burst) {
+        deviceLimits.put(deviceName, new RateLimit(ratePerSecond, burst));
+        deviceBuckets.remove(deviceName);
+        enabled = true;
+    }
+
+    public void setDefaultSourceLimit(double ratePerSecond, int burst) {
+        defaultSourceLimit = new RateLimit(ratePerSecond, burst);
+        sourceBuckets.clear();
+        enabled = true;
+    }
+
+    public void setSourceLimit(String sourceName, double ratePerSecond, int burst) {
+        sourceLimits.put(sourceName, new RateLimit(ratePerSecond, burst));
+        sourceBuckets.remove(sourceName);
+        enabled = true;
+    }
+
+    // With QUEUE, over-limit commands wait up to maxQueueDelayMillis for a token before being shed
+    public void setOverloadPolicy(OverloadPolicy policy, long maxQueueDelayMillis) {
+        this.policy = policy;
+        this.maxQueueDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxQueueDelayMillis);
+    }
+
+    public OverloadPolicy getOverloadPolicy() {
+        return policy;
+    }
+
+    // Returns 0 to run now, a positive delay in nanoseconds to run later, or REJECTED
+    public long admit(String sourceName, String deviceName) {
+        return admit(sourceName, deviceName, policy == OverloadPolicy.QUEUE ? maxQueueDelayNanos : 0);
+    }
+
+    // Returns 0 or REJECTED whatever the policy, reserving nothing for later; for callers that
+    // cannot delay a single command, such as batches
+    public long admitNow(String sourceName, String deviceName) {
+        return admit(sourceName, deviceName, 0);
+    }
+
+    private long admit(String sourceName, String deviceName, long maxWait) {
+        if (!enabled) {
+            return 0;
+        }
+
+        Counters counters = deviceCounters.computeIfAbsent(deviceName, k -> new Counters());
+        TokenBucket sourceBucket = bucket(sourceBuckets, sourceLimits, defaultSourceLimit, sourceName);
+        TokenBucket deviceBucket = bucket(deviceBuckets, deviceLimits, defaultDeviceLimit, deviceName);
+
+        long sourceWait = acquire(sourceBucket, maxWait);
+        long deviceWait = sourceWait == REJECTED ? REJECTED : acquire(deviceBucket, maxWait);
+
+        if (deviceWait == REJECTED) {
+            if (sourceWait != REJECTED && sourceBucket != null) {
+                // The source's token was not used: give it back so one overloaded device
+                // does not throttle the source everywhere else
+                sourceBucket.release();
+            }
+            counters.shed.increment();
+            return REJECTED;
+        }
+        long wait = Math.max(sourceWait, deviceWait);
+        if (wait > 0) {
+            counters.queued.increment();
+        } else {
+            counters.admitted.increment();
+        }
+        return wait;
+    }
+
+    public long getAdmittedCount(String deviceName) {
+        Counters counters = deviceCounters.get(deviceName);
+        return counters == null ? 0 : counters.admitted.sum();
+    }
+
+    public long getQueuedCount(String deviceName) {
+        Counters counters = deviceCounters.get(deviceName);
+        return counters == null ? 0 : counters.queued.sum();
+    }
+
+    public long getShedCount(String deviceName) {
+        Counters counters = deviceCounters.get(deviceName);
+        return counters == null ? 0 : counters.shed.sum();
+    }
+
+    public long getTotalShedCount() {
+        long total = 0;
+        for (Counters counters : deviceCounters.values()) {
+            total += counters.shed.sum();
+        }
+        return total;
+    }
+
+    // Null when no limit applies to the key
+    private static TokenBucket bucket(Map<String, TokenBucket> buckets, Map<String, RateLimit> limits,
+                                      RateLimit defaultLimit, String key) {
+        RateLimit limit = limits.getOrDefault(key, defaultLimit);
+        if (limit == null) {
+            return null;
+        }
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(limit.ratePerSecond, limit.burst));
+    }
+
+    private static long acquire(TokenBucket bucket, long maxWaitNanos) {
+        if (bucket == null) {
+            return 0;
+        }
+        if (maxWaitNanos == 0) {
+            return bucket.tryAcquire() ? 0 : REJECTED;
+        }
+        return bucket.reserve(maxWaitNanos);
+    }
+}
@@ -0,0 +1,479 @@
+package core.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+// Appends text lines to a file kept open for the writer's lifetime. Callers only copy the
+// line into an in-memory buffer; a single flusher thread writes everything buffered since
+// its last pass with one write, once the buffer reaches flushBytes or flushInterval has
+// passed since the first unwritten line. When the flusher falls too far behind, new lines
+// are dropped and counted instead of blocking the caller.
+//
+// With a rotation policy the file is the current segment: once it is too big or too old the
+// flusher renames it to "<file>.<yyyyMMdd-HHmmss-SSS>" (UTC) and starts a new one. Compressing
+// sealed segments and deleting those past retention happen on a separate maintenance
+// thread, so neither the callers nor the flusher wait for them.
+public class AsyncLogWriter implements AutoCloseable {
+
+    // When written lines are forced to the storage device
+    public enum FsyncPolicy {
+        // Left to the OS page cache
+        NEVER,
+        // After every flush: nothing acknowledged by flush() is lost on power failure
+        EVERY_FLUSH,
+        // At most once a second: bounds the loss window without an fsync per flush
+        EVERY_SECOND
+    }
+
+    private static final int DEFAULT_FLUSH_BYTES = 64 * 1024;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+    // Buffered lines beyond this many flushes' worth are dropped
+    private static final int MAX_PENDING_FLUSHES = 64;
+    private static final long SYNC_INTERVAL_NANOS = 1_000_000_000L;
+    // In UTC, so segment names keep sorting in time order across DST changes and time zone moves
+    private static final DateTimeFormatter SEGMENT_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+    private static final String COMPRESSED_SUFFIX = ".gz";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // After a failed roll the segment keeps growing and the next attempt waits this long
+    private static final long ROLL_RETRY_MILLIS = 30_000;
+
+    private final Path path;
+    // "<file>.<yyyyMMdd-HHmmss-SSS>[-n][.gz]", so other files next to the log are never touched
+    private final Pattern segmentNames;
+    private final LogRotationPolicy rotation;
+    // Null without a rotation policy
+    private final ExecutorService maintenance;
+    private final AtomicLong sealedSegments;
+    private final AtomicLong deletedSegments;
+    private final int flushBytes;
+    private final long flushIntervalNanos;
+    private final FsyncPolicy fsyncPolicy;
+    private final Thread flusher;
+    // Guarded by this writer
+    private StringBuilder pending;
+    private StringBuilder spare;
+    private long firstPendingNanos;
+    private long appendedLines;
+    private long writtenLines;
+    private long droppedLines;
+    private long flushes;
+    private boolean flushRequested;
+    private boolean closed;
+    // Only touched by the flusher thread after construction
+    private FileChannel channel;
+    private long segmentBytes;
+    private long segmentOpenedMillis;
+    private long nextRollMillis;
+    private long lastFsyncNanos;
+    // Written since the last fsync; under EVERY_SECOND the flusher wakes up to sync these
+    // even if no more lines arrive
+    private boolean unsynced;
+
+    public AsyncLogWriter(Path path) throws IOException {
+        this(path, DEFAULT_FLUSH_BYTES, DEFAULT_FLUSH_INTERVAL_MILLIS, FsyncPolicy.NEVER);
+    }
+
+    public AsyncLogWriter(Path path, int flushBytes, long flushIntervalMillis, FsyncPolicy fsyncPolicy)
+            throws IOException {
+        this(path, flushBytes, flushIntervalMillis, fsyncPolicy, LogRotationPolicy.none());
+    }
+
+    public AsyncLogWriter(Path path, int flushBytes, long flushIntervalMillis, FsyncPolicy fsyncPolicy,
+                          LogRotationPolicy rotation) throws IOException {
+        if (flushBytes < 1 || flushIntervalMillis < 1) {
+            throw new IllegalArgumentException("Flush size and interval must be positive");
+        }
+        this.path = path;
+        this.segmentNames = Pattern.compile(Pattern.quote(path.getFileName().toString())
+                + "\\.\\d{8}-\\d{6}-\\d{3}(-\\d+)?(" + Pattern.quote(COMPRESSED_SUFFIX) + ")?");
+        this.rotation = rotation;
+        this.sealedSegments = new AtomicLong();
+        this.deletedSegments = new AtomicLong();
+        openSegment();
+        this.flushBytes = flushBytes;
+        this.flushIntervalNanos = flushIntervalMillis * 1_000_000L;
+        this.fsyncPolicy = fsyncPolicy;
+        this.pending = new StringBuilder(flushBytes);
+        this.spare = new StringBuilder(flushBytes);
+        this.lastFsyncNanos = System.nanoTime();
+
+        if (rotation.rolls()) {
+            this.maintenance = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "log-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Segments sealed before a restart may still need compressing or deleting
+            maintenance.execute(this::maintain);
+        } else {
+            this.maintenance = null;
+        }
+
+        this.flusher = new Thread(this::flushLoop, "log-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Buffers the line; returns false if it was dropped because the writer is closed or behind
+    public boolean writeLine(String line) {
+        synchronized (this) {
+            if (closed || pending.length() >= flushBytes * MAX_PENDING_FLUSHES) {
+                droppedLines++;
+                return false;
+            }
+            boolean first = pending.length() == 0;
+            if (first) {
+                firstPendingNanos = System.nanoTime();
+            }
+            pending.append(line).append(System.lineSeparator());
+            appendedLines++;
+            // The first line starts the flusher's interval; after that it sleeps until the
+            // interval runs out unless the buffer fills up first
+            if (first || pending.length() >= flushBytes) {
+                notifyAll();
+            }
+        }
+        return true;
+    }
+
+    // Blocks until every line buffered before the call has been written (and synced, per policy)
+    public void flush() {
+        synchronized (this) {
+            long target = appendedLines;
+            flushRequested = true;
+            notifyAll();
+            while (writtenLines < target && flusher.isAlive()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized long getWrittenLines() {
+        return writtenLines;
+    }
+
+    public synchronized long getDroppedLines() {
+        return droppedLines;
+    }
+
+    public synchronized long getFlushCount() {
+        return flushes;
+    }
+
+    public LogRotationPolicy getRotation() {
+        return rotation;
+    }
+
+    public long getSealedSegmentCount() {
+        return sealedSegments.get();
+    }
+
+    public long getDeletedSegmentCount() {
+        return deletedSegments.get();
+    }
+
+    // Sealed segments still on disk, oldest first
+    public List<Path> getSealedSegments() {
+        List<Path> segments = new ArrayList<>();
+        String prefix = path.getFileName().toString() + ".";
+        Path directory = path.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                if (segmentNames.matcher(file.getFileName().toString()).matches()) {
+                    segments.add(file);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error listing log segments of " + path + ": " + e.getMessage());
+        }
+        // The timestamp and sequence number in the names sort them by age, compressed or not
+        segments.sort(Comparator.comparing(AsyncLogWriter::uncompressedName));
+        return segments;
+    }
+
+    // Writes what is still buffered, syncs unless the policy is NEVER, and closes the file
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (fsyncPolicy != FsyncPolicy.NEVER && channel.isOpen()) {
+                channel.force(false);
+            }
+        } finally {
+            channel.close();
+            if (maintenance != null) {
+                maintenance.shutdown();
+                try {
+                    maintenance.awaitTermination(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            StringBuilder batch;
+            long lines;
+            boolean force;
+            synchronized (this) {
+                while (!closed && !flushRequested && pending.length() < flushBytes) {
+                    long now = System.nanoTime();
+                    long waitNanos = pending.length() == 0
+                            ? Long.MAX_VALUE
+                            : flushIntervalNanos - (now - firstPendingNanos);
+                    if (unsynced && fsyncPolicy == FsyncPolicy.EVERY_SECOND) {
+                        waitNanos = Math.min(waitNanos, SYNC_INTERVAL_NANOS - (now - lastFsyncNanos));
+                    }
+                    if (waitNanos <= 0) {
+                        break;
+                    }
+                    try {
+                        if (waitNanos == Long.MAX_VALUE) {
+                            wait();
+                        } else {
+                            wait(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (closed && pending.length() == 0) {
+                    notifyAll();
+                    return;
+                }
+                force = flushRequested;
+                flushRequested = false;
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                lines = appendedLines;
+            }
+
+            try {
+                write(batch, force);
+            } catch (IOException e) {
+                System.err.println("Error writing log file " + path + ": " + e.getMessage());
+            }
+            batch.setLength(0);
+            synchronized (this) {
+                writtenLines = lines;
+                flushes++;
+                notifyAll();
+            }
+        }
+    }
+
+    private void write(StringBuilder batch, boolean flushRequested) throws IOException {
+        if (!channel.isOpen()) {
+            // A roll could not open the next segment; try again before writing
+            openSegment();
+        }
+        if (batch.length() > 0) {
+            long now = System.currentTimeMillis();
+            if (rotation.getMaxSegmentMillis() > 0 && segmentBytes > 0 && now >= nextRollMillis
+                    && now - segmentOpenedMillis >= rotation.getMaxSegmentMillis()) {
+                roll();
+            }
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(CharBuffer.wrap(batch));
+            while (buffer.hasRemaining()) {
+                segmentBytes += channel.write(buffer);
+            }
+            unsynced = true;
+            if (rotation.getMaxSegmentBytes() > 0 && segmentBytes >= rotation.getMaxSegmentBytes()
+                    && System.currentTimeMillis() >= nextRollMillis) {
+                roll();
+                return;
+            }
+        }
+        long now = System.nanoTime();
+        boolean sync;
+        switch (fsyncPolicy) {
+            case EVERY_FLUSH:
+                sync = true;
+                break;
+            case EVERY_SECOND:
+                sync = unsynced && (flushRequested || now - lastFsyncNanos >= SYNC_INTERVAL_NANOS);
+                break;
+            default:
+                sync = false;
+                break;
+        }
+        if (sync) {
+            channel.force(false);
+            lastFsyncNanos = now;
+            unsynced = false;
+        }
+    }
+
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        segmentBytes = channel.size();
+        segmentOpenedMillis = System.currentTimeMillis();
+    }
+
+    // Seals the current segment under a timestamped name and starts a new one
+    private void roll() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            channel.force(false);
+            lastFsyncNanos = System.nanoTime();
+        }
+        unsynced = false;
+        channel.close();
+        Path sealed = null;
+        try {
+            sealed = sealedPath();
+            Files.move(path, sealed);
+        } catch (IOException e) {
+            System.err.println("Error sealing log segment " + path + ": " + e.getMessage());
+            sealed = null;
+        }
+        // Reopens the same file if it could not be moved away, and keeps writing to it until
+        // the retry time instead of trying again on every write
+        try {
+            openSegment();
+        } catch (IOException e) {
+            // The closed channel is reopened by the next write
+            System.err.println("Error opening log file " + path + ": " + e.getMessage());
+        }
+        if (sealed == null) {
+            nextRollMillis = System.currentTimeMillis() + ROLL_RETRY_MILLIS;
+        } else {
+            sealedSegments.incrementAndGet();
+            try {
+                maintenance.execute(this::maintain);
+            } catch (RejectedExecutionException e) {
+                // Closing: the segment is kept as is
+            }
+        }
+    }
+
+    private Path sealedPath() {
+        String base = path.getFileName() + "." + SEGMENT_FORMATTER.format(Instant.now());
+        Path sealed = path.resolveSibling(base);
+        for (int n = 1; Files.exists(sealed) || Files.exists(compressedPath(sealed)); n++) {
+            sealed = path.resolveSibling(base + "-" + n);
+        }
+        return sealed;
+    }
+
+    private static String uncompressedName(Path segment) {
+        String name = segment.getFileName().toString();
+        return name.endsWith(COMPRESSED_SUFFIX) ? name.substring(0, name.length() - COMPRESSED_SUFFIX.length()) : name;
+    }
+
+    private static Path compressedPath(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + COMPRESSED_SUFFIX);
+    }
+
+    // Runs on the maintenance thread: compresses sealed segments, then applies retention
+    private void maintain() {
+        List<Path> segments = getSealedSegments();
+        if (rotation.isCompressed()) {
+            for (int i = 0; i < segments.size(); i++) {
+                Path segment = segments.get(i);
+                if (!segment.getFileName().toString().endsWith(COMPRESSED_SUFFIX)) {
+                    segments.set(i, compress(segment));
+                }
+            }
+        }
+        applyRetention(segments);
+    }
+
+    private Path compress(Path segment) {
+        Path compressed = compressedPath(segment);
+        Path temp = compressed.resolveSibling(compressed.getFileName() + TEMP_SUFFIX);
+        try {
+            try (InputStream in = Files.newInputStream(segment);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+                in.transferTo(out);
+            }
+            Files.move(temp, compressed, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(segment);
+            return compressed;
+        } catch (IOException e) {
+            System.err.println("Error compressing log segment " + segment + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Left for the next pass
+            }
+            return segment;
+        }
+    }
+
+    // Deletes the oldest sealed segments while the log is over its size or age limit
+    private void applyRetention(List<Path> segments) {
+        if (rotation.getRetainBytes() <= 0 && rotation.getRetainMillis() <= 0) {
+            return;
+        }
+        try {
+            long total = Files.exists(path) ? Files.size(path) : 0;
+            for (Path segment : segments) {
+                total += Files.size(segment);
+            }
+            long oldestKept = System.currentTimeMillis() - rotation.getRetainMillis();
+            for (Path segment : segments) {
+                boolean tooBig = rotation.getRetainBytes() > 0 && total > rotation.getRetainBytes();
+                boolean tooOld = rotation.getRetainMillis() > 0
+                        && Files.getLastModifiedTime(segment).toMillis() < oldestKept;
+                if (!tooBig && !tooOld) {
+                    break;
+                }
+                long size = Files.size(segment);
+                Files.delete(segment);
+                total -= size;
+                deletedSegments.incrementAndGet();
+            }
+        } catch (IOException e) {
+            System.err.println("Error applying log retention to " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package core.services;
+
+import java.util.Collections;
+import java.util.List;
+
+// Outcome of a command sent to a set of devices
+public final class BatchResult {
+
+    private final String target;
+    private final List<CommandResult> results;
+
+    public BatchResult(String target, List<CommandResult> results) {
+        this.target = target;
+        this.results = Collections.unmodifiableList(results);
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public List<CommandResult> getResults() {
+        return results;
+    }
+
+    public int count(CommandResult.Status status) {
+        int count = 0;
+        for (CommandResult result : results) {
+            if (result.getStatus() == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean isSuccess() {
+        return count(CommandResult.Status.EXECUTED) == results.size();
+    }
+
+    @Override
+    public String toString() {
+        return target + ": " + results.size() + " devices, "
+                + count(CommandResult.Status.EXECUTED) + " executed, "
+                + count(CommandResult.Status.FAILED) + " failed, "
+                + count(CommandResult.Status.REJECTED) + " rejected";
+    }
+}
@@ -0,0 +1,367 @@
+package core.services;
+
+import core.DeviceEvent;
+import core.EventType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary, block-structured device event log.
+//
+// Events are collected into blocks of up to BLOCK_RECORDS records. Each block starts with a
+// summary - its time range plus the names of the devices and event types it contains - and
+// its records refer to those names by index. For every block written, an entry is appended
+// to a sparse index file next to the log ("<log>.idx"), so EventLogReader can pick the
+// blocks overlapping a time range from the index alone and skip blocks whose summary lacks
+// the wanted devices or types. Appending only adds the event to the current block; a full
+// block is handed to a background writer thread, which encodes it and writes it with one
+// write, so callers never wait for the disk. flush() hands off the unfinished block too and
+// waits for the writer. Events not yet written are lost if the process dies, and whole
+// blocks are dropped and counted when the writer falls too far behind.
+//
+// Block:  [int magic][int blockBytes][int recordCount][long minNanos][long maxNanos]
+//         [short deviceCount][string...][short typeCount][string...][record...]
+// Record: [int recordBytes][long timestampNanos][short device][short type][long longValue]
+//         [double doubleValue][double secondDoubleValue][byte flags][text?][message?]
+// Index:  [long minNanos][long maxNanos][long blockOffset][int blockBytes] per block
+// Strings are [unsigned short byteLength][UTF-8 bytes], cut at 65535 bytes.
+public class BinaryEventLog implements AutoCloseable {
+
+    static final int MAGIC = 0x45564C42; // "EVLB"
+    static final int BLOCK_HEADER_BYTES = 4 + 4 + 4 + 8 + 8;
+    static final int INDEX_ENTRY_BYTES = 8 + 8 + 8 + 4;
+    static final int FLAG_TEXT = 1;
+    static final int FLAG_MESSAGE = 2;
+    // The message is stored once, as the text (preset messages)
+    static final int FLAG_MESSAGE_IS_TEXT = 4;
+    static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private static final int BLOCK_RECORDS = 256;
+    private static final int INITIAL_BLOCK_BYTES = 16 * 1024;
+    // Full blocks waiting for the writer beyond this many are dropped
+    private static final int MAX_PENDING_BLOCKS = 64;
+
+    private final Path path;
+    private final FileChannel log;
+    private final FileChannel index;
+    private final Thread writer;
+    // Guarded by this log
+    private List<DeviceEvent> block;
+    private final Deque<List<DeviceEvent>> finished;
+    private long handedOff;
+    private long processed;
+    private long blocks;
+    private long events;
+    private long droppedEvents;
+    // Last write error, reported by the next flush() or close()
+    private IOException failure;
+    private boolean closed;
+    // Only touched by the writer thread after construction
+    private long writePosition;
+
+    public BinaryEventLog(Path path) throws IOException {
+        this.path = path;
+        this.log = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.index = FileChannel.open(indexPath(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.block = new ArrayList<>(BLOCK_RECORDS);
+        this.finished = new ArrayDeque<>();
+        // Drops a block torn by a crash and rebuilds the index from the block headers
+        this.writePosition = recover();
+
+        this.writer = new Thread(this::writeLoop, "event-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public static Path indexPath(Path logPath) {
+        return Paths.get(logPath.toString() + ".idx");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized void append(DeviceEvent event) {
+        if (closed) {
+            return;
+        }
+        block.add(event);
+        if (block.size() >= BLOCK_RECORDS) {
+            handOff();
+        }
+    }
+
+    // Writes the unfinished block and waits for the writer, so everything appended so far
+    // can be queried. Throws the last write error, if any.
+    public synchronized void flush() throws IOException {
+        if (!block.isEmpty()) {
+            handOff();
+        }
+        long target = handedOff;
+        while (processed < target && writer.isAlive()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while flushing binary event log");
+            }
+        }
+        throwFailure();
+    }
+
+    public synchronized long getBlockCount() {
+        return blocks;
+    }
+
+    public synchronized long getEventCount() {
+        return events;
+    }
+
+    public synchronized long getDroppedEventCount() {
+        return droppedEvents;
+    }
+
+    // Writes everything appended so far, stops the writer and closes the files
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (!block.isEmpty()) {
+                handOff();
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            log.close();
+        } finally {
+            index.close();
+        }
+        synchronized (this) {
+            throwFailure();
+        }
+    }
+
+    // Caller holds the lock
+    private void handOff() {
+        if (finished.size() >= MAX_PENDING_BLOCKS) {
+            droppedEvents += block.size();
+            block.clear();
+            return;
+        }
+        finished.add(block);
+        block = new ArrayList<>(BLOCK_RECORDS);
+        handedOff++;
+        notifyAll();
+    }
+
+    // Caller holds the lock
+    private void throwFailure() throws IOException {
+        IOException error = failure;
+        failure = null;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<DeviceEvent> next;
+            synchronized (this) {
+                while (finished.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                next = finished.poll();
+                if (next == null) {
+                    return;
+                }
+            }
+
+            IOException error = null;
+            try {
+                writeBlock(next);
+            } catch (IOException e) {
+                System.err.println("Error writing binary event log: " + e.getMessage());
+                error = e;
+            }
+            synchronized (this) {
+                if (error == null) {
+                    blocks++;
+                    events += next.size();
+                } else {
+                    failure = error;
+                }
+                processed++;
+                notifyAll();
+            }
+        }
+    }
+
+    // Runs on the writer thread
+    private void writeBlock(List<DeviceEvent> block) throws IOException {
+        Map<String, Integer> devices = new HashMap<>();
+        Map<EventType, Integer> types = new HashMap<>();
+        List<String> deviceNames = new ArrayList<>();
+        List<String> typeNames = new ArrayList<>();
+        long minNanos = Long.MAX_VALUE;
+        long maxNanos = Long.MIN_VALUE;
+        for (DeviceEvent event : block) {
+            if (devices.putIfAbsent(event.getDeviceName(), devices.size()) == null) {
+                deviceNames.add(event.getDeviceName());
+            }
+            if (types.putIfAbsent(event.getType(), types.size()) == null) {
+                typeNames.add(event.getTypeName());
+            }
+            minNanos = Math.min(minNanos, event.getTimestampNanos());
+            maxNanos = Math.max(maxNanos, event.getTimestampNanos());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BLOCK_BYTES);
+        buffer.position(BLOCK_HEADER_BYTES);
+        buffer = putStrings(buffer, deviceNames);
+        buffer = putStrings(buffer, typeNames);
+        for (DeviceEvent event : block) {
+            String text = event.getText();
+            String message = event.hasCustomMessage() ? event.getMessage() : null;
+            boolean messageIsText = message != null && message.equals(text);
+            byte[] textBytes = text == null ? null : utf8(text);
+            byte[] messageBytes = message == null || messageIsText ? null : utf8(message);
+            int recordBytes = 4 + 8 + 2 + 2 + 8 + 8 + 8 + 1
+                    + (textBytes == null ? 0 : 2 + textBytes.length)
+                    + (messageBytes == null ? 0 : 2 + messageBytes.length);
+            buffer = ensureRemaining(buffer, recordBytes);
+            buffer.putInt(recordBytes);
+            buffer.putLong(event.getTimestampNanos());
+            buffer.putShort(devices.get(event.getDeviceName()).shortValue());
+            buffer.putShort(types.get(event.getType()).shortValue());
+            buffer.putLong(event.getLongValue());
+            buffer.putDouble(event.getDoubleValue());
+            buffer.putDouble(event.getSecondDoubleValue());
+            int flags = (textBytes == null ? 0 : FLAG_TEXT)
+                    | (messageBytes == null ? 0 : FLAG_MESSAGE)
+                    | (messageIsText ? FLAG_MESSAGE_IS_TEXT : 0);
+            buffer.put((byte) flags);
+            if (textBytes != null) {
+                buffer.putShort((short) textBytes.length).put(textBytes);
+            }
+            if (messageBytes != null) {
+                buffer.putShort((short) messageBytes.length).put(messageBytes);
+            }
+        }
+        int blockBytes = buffer.position();
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, blockBytes);
+        buffer.putInt(8, block.size());
+        buffer.putLong(12, minNanos);
+        buffer.putLong(20, maxNanos);
+        buffer.flip();
+
+        long offset = writePosition;
+        try {
+            while (buffer.hasRemaining()) {
+                writePosition += log.write(buffer, writePosition);
+            }
+            writeIndexEntry(writtenBlocks(), minNanos, maxNanos, offset, blockBytes);
+        } catch (IOException e) {
+            // The next block overwrites whatever part of this one made it to the file
+            writePosition = offset;
+            throw e;
+        }
+    }
+
+    private synchronized long writtenBlocks() {
+        return blocks;
+    }
+
+    private void writeIndexEntry(long entry, long minNanos, long maxNanos, long offset, int blockBytes)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        buffer.putLong(minNanos).putLong(maxNanos).putLong(offset).putInt(blockBytes).flip();
+        long position = entry * INDEX_ENTRY_BYTES;
+        while (buffer.hasRemaining()) {
+            position += index.write(buffer, position);
+        }
+    }
+
+    private long recover() throws IOException {
+        long size = log.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES);
+        while (position + BLOCK_HEADER_BYTES <= size) {
+            header.clear();
+            readFully(log, header, position);
+            header.flip();
+            int blockBytes = header.getInt(4);
+            if (header.getInt(0) != MAGIC || blockBytes < BLOCK_HEADER_BYTES || position + blockBytes > size) {
+                break;
+            }
+            writeIndexEntry(blocks, header.getLong(12), header.getLong(20), position, blockBytes);
+            blocks++;
+            events += header.getInt(8);
+            position += blockBytes;
+        }
+        log.truncate(position);
+        index.truncate(blocks * INDEX_ENTRY_BYTES);
+        return position;
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_STRING_BYTES ? bytes : Arrays.copyOf(bytes, MAX_STRING_BYTES);
+    }
+
+    private static ByteBuffer putStrings(ByteBuffer buffer, List<String> values) {
+        buffer = ensureRemaining(buffer, 2);
+        buffer.putShort((short) values.size());
+        for (String value : values) {
+            byte[] bytes = utf8(value);
+            buffer = ensureRemaining(buffer, 2 + bytes.length);
+            buffer.putShort((short) bytes.length).put(bytes);
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer ensureRemaining(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
@@ -0,0 +1,552 @@
+package core.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Append-only write-ahead journal of routed commands.
+//
+// Callers encode their record and hand it to a single flusher thread, which writes every
+// record queued since its last pass with one write and one fsync (group commit) and then
+// completes their futures. The file is grown in preallocated zero-filled chunks; a record
+// length of 0 marks the end of the journal.
+//
+// Record layout: [int payloadLength][int crc32(payload)][payload]
+// Payload: long timestamp, source, target, action, int paramCount, params...
+//
+// Compaction keeps only the latest record of each action for each target device, in their
+// original order, which is all replay needs to rebuild device state. It starts once the file
+// has doubled since the last compaction and is over the threshold, or on request. A separate
+// compactor thread copies the survivors among the records written so far to
+// "<journal>.compact" while the flusher keeps appending; the flusher then copies over the
+// few records written meanwhile, syncs, and moves the file over the journal in one step.
+public class CommandJournal implements AutoCloseable {
+
+    private static final int HEADER_BYTES = 8;
+    private static final long PREALLOCATE_CHUNK_BYTES = 4L * 1024 * 1024;
+    private static final long DEFAULT_COMPACTION_BYTES = 64L * 1024 * 1024;
+
+    // Visits the raw records of a journal file
+    private interface RecordVisitor {
+        void visit(long position, byte[] payload) throws IOException;
+    }
+
+    // A journaled command as read back by replay()
+    public static final class Entry {
+        private final long timestamp;
+        private final String source;
+        private final String target;
+        private final String action;
+        private final String[] params;
+
+        Entry(long timestamp, String source, String target, String action, String[] params) {
+            this.timestamp = timestamp;
+            this.source = source;
+            this.target = target;
+            this.action = action;
+            this.params = params;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public String getAction() {
+            return action;
+        }
+
+        public String[] getParams() {
+            return params;
+        }
+    }
+
+    // A compacted copy of the journal up to cutoff, or the error that prevented it
+    private static final class CompactedPrefix {
+        final long cutoff;
+        final long size;
+        final IOException error;
+
+        CompactedPrefix(long cutoff, long size, IOException error) {
+            this.cutoff = cutoff;
+            this.size = size;
+            this.error = error;
+        }
+    }
+
+    private static final class PendingRecord {
+        final byte[] payload;
+        final CompletableFuture<Void> durable;
+
+        PendingRecord(byte[] payload) {
+            this.payload = payload;
+            this.durable = new CompletableFuture<>();
+        }
+    }
+
+    private final Path path;
+    private final boolean fsync;
+    private final Thread flusher;
+    private volatile long compactionThresholdBytes;
+    // Guarded by this journal
+    private List<PendingRecord> pending;
+    private List<CompletableFuture<Void>> compactionRequests;
+    // Requests served by the compaction in progress; null while none runs
+    private List<CompletableFuture<Void>> compacting;
+    private CompactedPrefix compacted;
+    private boolean closed;
+    private long batches;
+    private long records;
+    private long compactions;
+    // Only touched by the flusher thread after construction
+    private FileChannel channel;
+    private long writePosition;
+    private long preallocatedSize;
+    private long sizeAfterCompaction;
+
+    public CommandJournal(Path path) throws IOException {
+        this(path, true);
+    }
+
+    // fsync=false leaves durability to the OS page cache (still written in groups)
+    public CommandJournal(Path path, boolean fsync) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.fsync = fsync;
+        this.compactionThresholdBytes = DEFAULT_COMPACTION_BYTES;
+        this.pending = new ArrayList<>();
+        this.compactionRequests = new ArrayList<>();
+        this.closed = false;
+        this.writePosition = scan(channel, Long.MAX_VALUE, null);
+        this.preallocatedSize = channel.size();
+        this.sizeAfterCompaction = writePosition;
+
+        this.flusher = new Thread(this::flushLoop, "command-journal");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Queues a record and returns a future completed once it is on disk. A command that cannot
+    // be encoded (e.g. a parameter over 64 KB) fails its own future only.
+    public CompletableFuture<Void> append(String source, String target, String action, String[] params) {
+        PendingRecord record;
+        try {
+            record = new PendingRecord(encode(System.currentTimeMillis(), source, target, action, params));
+        } catch (UncheckedIOException e) {
+            return CompletableFuture.failedFuture(e.getCause());
+        }
+        synchronized (this) {
+            if (closed) {
+                record.durable.completeExceptionally(new IllegalStateException("Journal is closed"));
+                return record.durable;
+            }
+            pending.add(record);
+            notifyAll();
+        }
+        return record.durable;
+    }
+
+    // 0 turns automatic compaction off
+    public void setCompactionThreshold(long bytes) {
+        this.compactionThresholdBytes = Math.max(0, bytes);
+    }
+
+    // Compacts the journal after the records queued so far are written; the future completes
+    // once the compacted file has replaced the old one
+    public CompletableFuture<Void> compact() {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                done.completeExceptionally(new IllegalStateException("Journal is closed"));
+                return done;
+            }
+            compactionRequests.add(done);
+            notifyAll();
+        }
+        return done;
+    }
+
+    public synchronized long getCompactionCount() {
+        return compactions;
+    }
+
+    public synchronized long getBatchCount() {
+        return batches;
+    }
+
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    // Flushes everything queued so far and stops the flusher
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    // Reads every complete record in order, stopping at the end marker or a torn write
+    public static void replay(Path path, Consumer<Entry> handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            scan(channel, Long.MAX_VALUE, handler == null ? null : (position, payload) -> handler.accept(decode(payload)));
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<PendingRecord> batch;
+            List<CompletableFuture<Void>> requests = null;
+            List<CompletableFuture<Void>> finishedRequests = null;
+            CompactedPrefix finished = null;
+            synchronized (this) {
+                while (pending.isEmpty() && compacted == null
+                        && (compactionRequests.isEmpty() || compacting != null) && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (closed && pending.isEmpty()) {
+                    // A compaction still running is abandoned; its file is left for the next one
+                    failAll(compactionRequests, new IllegalStateException("Journal is closed"));
+                    if (compacting != null) {
+                        failAll(compacting, new IllegalStateException("Journal is closed"));
+                    }
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                if (compacted != null) {
+                    finished = compacted;
+                    finishedRequests = compacting;
+                    compacted = null;
+                    compacting = null;
+                }
+                if (compacting == null && finished == null && !compactionRequests.isEmpty()) {
+                    requests = compactionRequests;
+                    compactionRequests = new ArrayList<>();
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    writeBatch(batch);
+                    for (PendingRecord record : batch) {
+                        record.durable.complete(null);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error writing command journal: " + e.getMessage());
+                    for (PendingRecord record : batch) {
+                        record.durable.completeExceptionally(e);
+                    }
+                }
+            }
+
+            if (finished != null) {
+                finishCompaction(finished, finishedRequests);
+                continue;
+            }
+            long threshold = compactionThresholdBytes;
+            boolean due = threshold > 0 && writePosition >= threshold && writePosition >= 2 * sizeAfterCompaction;
+            if (requests == null && due) {
+                synchronized (this) {
+                    if (compacting == null) {
+                        requests = new ArrayList<>();
+                    }
+                }
+            }
+            if (requests != null) {
+                startCompaction(requests);
+            }
+        }
+    }
+
+    // Flusher thread only: copies the survivors of everything written so far on a compactor
+    // thread, which hands the result back through the flusher's wait loop
+    private void startCompaction(List<CompletableFuture<Void>> requests) {
+        long cutoff = writePosition;
+        synchronized (this) {
+            compacting = requests;
+        }
+        Thread compactor = new Thread(() -> {
+            CompactedPrefix result;
+            try {
+                result = new CompactedPrefix(cutoff, compactPrefix(cutoff), null);
+            } catch (IOException e) {
+                result = new CompactedPrefix(cutoff, 0, e);
+            }
+            synchronized (this) {
+                if (!closed) {
+                    compacted = result;
+                    notifyAll();
+                }
+            }
+        }, "command-journal-compactor");
+        compactor.setDaemon(true);
+        compactor.start();
+    }
+
+    // Compactor thread: writes the latest record per target and action among the records
+    // before cutoff to the compaction file; returns its size
+    private long compactPrefix(long cutoff) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            Map<String, Long> latest = new HashMap<>();
+            scan(in, cutoff, (position, payload) -> {
+                Entry entry = decode(payload);
+                latest.put(entry.getTarget() + '\u0000' + entry.getAction(), position);
+            });
+
+            try (FileChannel out = FileChannel.open(compactionPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long[] written = new long[1];
+                CRC32 crc = new CRC32();
+                scan(in, cutoff, (position, payload) -> {
+                    Entry entry = decode(payload);
+                    if (latest.get(entry.getTarget() + '\u0000' + entry.getAction()) != position) {
+                        return;
+                    }
+                    crc.reset();
+                    crc.update(payload);
+                    ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+                    record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+                    while (record.hasRemaining()) {
+                        written[0] += out.write(record, written[0]);
+                    }
+                });
+                return written[0];
+            }
+        }
+    }
+
+    // Flusher thread only: appends the records written since the cutoff to the compacted copy
+    // and swaps it in
+    private void finishCompaction(CompactedPrefix prefix, List<CompletableFuture<Void>> requests) {
+        try {
+            if (prefix.error != null) {
+                throw prefix.error;
+            }
+            long size = prefix.size;
+            try (FileChannel out = FileChannel.open(compactionPath(), StandardOpenOption.WRITE)) {
+                long position = prefix.cutoff;
+                while (position < writePosition) {
+                    long copied = channel.transferTo(position, writePosition - position, out.position(size));
+                    position += copied;
+                    size += copied;
+                }
+                out.force(true);
+            }
+
+            long before = writePosition;
+            Files.move(compactionPath(), path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            writePosition = size;
+            preallocatedSize = channel.size();
+            sizeAfterCompaction = size;
+            synchronized (this) {
+                compactions++;
+            }
+            System.out.println("Compacted command journal " + path + " from " + before + " to " + size + " bytes");
+            requests.forEach(request -> request.complete(null));
+        } catch (IOException e) {
+            System.err.println("Error compacting command journal: " + e.getMessage());
+            // Do not retry on every batch; wait for the file to double again
+            sizeAfterCompaction = writePosition;
+            failAll(requests, e);
+        }
+    }
+
+    private Path compactionPath() {
+        return Paths.get(path.toString() + ".compact");
+    }
+
+    private static void failAll(List<CompletableFuture<Void>> requests, Throwable error) {
+        requests.forEach(request -> request.completeExceptionally(error));
+    }
+
+    private void writeBatch(List<PendingRecord> batch) throws IOException {
+        int size = 0;
+        for (PendingRecord record : batch) {
+            size += HEADER_BYTES + record.payload.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        CRC32 crc = new CRC32();
+        for (PendingRecord record : batch) {
+            crc.reset();
+            crc.update(record.payload);
+            buffer.putInt(record.payload.length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(record.payload);
+        }
+        buffer.flip();
+
+        ensurePreallocated(writePosition + size);
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+
+        synchronized (this) {
+            batches++;
+            records += batch.size();
+        }
+    }
+
+    private void ensurePreallocated(long requiredSize) throws IOException {
+        if (requiredSize <= preallocatedSize) {
+            return;
+        }
+        long newSize = preallocatedSize;
+        while (newSize < requiredSize) {
+            newSize += PREALLOCATE_CHUNK_BYTES;
+        }
+        ByteBuffer zeros = ByteBuffer.allocate(64 * 1024);
+        for (long position = preallocatedSize; position < newSize; position += zeros.capacity()) {
+            zeros.clear();
+            zeros.limit((int) Math.min(zeros.capacity(), newSize - position));
+            while (zeros.hasRemaining()) {
+                channel.write(zeros, position + zeros.position());
+            }
+        }
+        preallocatedSize = newSize;
+    }
+
+    // Walks the records from the start up to limit; returns the offset just past the last
+    // valid one
+    private static long scan(FileChannel channel, long limit, RecordVisitor visitor) throws IOException {
+        long size = Math.min(channel.size(), limit);
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || position + HEADER_BYTES + length > size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, position + HEADER_BYTES);
+            crc.reset();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            if (visitor != null) {
+                visitor.visit(position, payload.array());
+            }
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private static byte[] encode(long timestamp, String source, String target, String action, String[] params) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(timestamp);
+            writeString(out, source);
+            writeString(out, target);
+            writeString(out, action);
+            out.writeInt(params == null ? -1 : params.length);
+            if (params != null) {
+                for (String param : params) {
+                    writeString(out, param);
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Entry decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long timestamp = in.readLong();
+        String source = readString(in);
+        String target = readString(in);
+        String action = readString(in);
+        int paramCount = in.readInt();
+        String[] params = null;
+        if (paramCount >= 0) {
+            params = new String[paramCount];
+            for (int i = 0; i < paramCount; i++) {
+                params[i] = readString(in);
+            }
+        }
+        return new Entry(timestamp, source, target, action, params);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // Entries of a journal file, for inspection and auditing
+    public static List<Entry> readAll(Path path) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        replay(path, entries::add);
+        return Collections.unmodifiableList(entries);
+    }
+}
@@ -0,0 +1,464 @@
+package core.services;
+
+import core.CommandType;
+import core.DeviceCommand;
+import core.SmartDevice;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+// Executes commands off the caller's thread. Each device has a bounded mailbox that is
+// drained by at most one worker at a time, so commands to the same device run in the order
+// they were submitted while different devices run in parallel.
+// Any executor works; on JDK 21 Executors.newVirtualThreadPerTaskExecutor() is a good fit.
+//
+// With coalescing enabled, a coalescable command (see CommandType.isCoalescable) replaces a
+// pending command of the same type for the same device, and the replaced one completes as
+// COALESCED. A coalescing window delays draining an idle mailbox so a burst can collapse
+// into a single execution of the latest value.
+//
+// A command can carry a journal record (see CommandJournal). The record is written only once
+// the command reaches the front of its mailbox, and the command runs once the record is
+// durable, so commands the mailbox rejected or coalesced away are never journaled. While a
+// device waits for its records its mailbox holds no worker.
+public class CommandPipeline {
+
+    // Commands run per scheduling of a mailbox before yielding the worker to other devices
+    private static final int DRAIN_BATCH_SIZE = 64;
+    // Idle workers and the timer thread exit after this, so an idle hub holds no threads
+    private static final long IDLE_THREAD_SECONDS = 30;
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final int mailboxCapacity;
+    private final Map<SmartDevice, DeviceMailbox> mailboxes;
+    private final AtomicInteger pendingCommands;
+    private final AtomicLong coalescedCommands;
+    private final Object drainLock;
+    // The mailbox the current worker thread is draining, if any
+    private final ThreadLocal<DeviceMailbox> draining;
+    private volatile boolean accepting;
+    private volatile boolean coalescing;
+    private volatile long coalescingWindowMillis;
+
+    public CommandPipeline(int workerThreads, int mailboxCapacity) {
+        this(idleTimingOut(new ThreadPoolExecutor(workerThreads, workerThreads, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "command-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        })), mailboxCapacity);
+    }
+
+    public CommandPipeline(ExecutorService executor, int mailboxCapacity) {
+        this.executor = executor;
+        this.scheduler = idleTimingOut(new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "command-pipeline-timer");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        this.mailboxCapacity = mailboxCapacity;
+        this.mailboxes = new ConcurrentHashMap<>();
+        this.pendingCommands = new AtomicInteger();
+        this.coalescedCommands = new AtomicLong();
+        this.drainLock = new Object();
+        this.draining = new ThreadLocal<>();
+        this.accepting = true;
+        this.coalescing = false;
+        this.coalescingWindowMillis = 0;
+    }
+
+    // A window of 0 only merges commands that queue up behind a busy device
+    public void enableCoalescing(long windowMillis) {
+        this.coalescingWindowMillis = Math.max(0, windowMillis);
+        this.coalescing = true;
+    }
+
+    public void disableCoalescing() {
+        this.coalescing = false;
+        this.coalescingWindowMillis = 0;
+    }
+
+    public CompletableFuture<CommandResult> submit(SmartDevice device, DeviceCommand command) {
+        return submit(device, command, null);
+    }
+
+    // The record supplier writes the command's journal record and returns a future completed
+    // once it is durable; null means no journaling
+    public CompletableFuture<CommandResult> submit(SmartDevice device, DeviceCommand command,
+                                                  Supplier<CompletableFuture<?>> record) {
+        CommandType coalesceKey = coalescing && command.getType().isCoalescable() ? command.getType() : null;
+        return submit(device, () -> device.execute(command), coalesceKey, record);
+    }
+
+    public CompletableFuture<CommandResult> submitAfter(SmartDevice device, DeviceCommand command, long delayNanos) {
+        return submitAfter(device, command, delayNanos, null);
+    }
+
+    // Queues the command once the delay has elapsed, e.g. to wait for a rate-limit token.
+    // Delayed commands count as pending, so shutdown waits for them too.
+    public CompletableFuture<CommandResult> submitAfter(SmartDevice device, DeviceCommand command, long delayNanos,
+                                                       Supplier<CompletableFuture<?>> record) {
+        if (delayNanos <= 0) {
+            return submit(device, command, record);
+        }
+
+        CompletableFuture<CommandResult> future = new CompletableFuture<>();
+        pendingCommands.incrementAndGet();
+        try {
+            scheduler.schedule(() -> submit(device, command, record).whenComplete((result, error) -> {
+                future.complete(result);
+                commandFinished();
+            }), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            future.complete(CommandResult.rejected(device.getName(), "Command pipeline is shut down"));
+            commandFinished();
+        }
+        return future;
+    }
+
+    // Runs the command in the device's mailbox and waits for it, so synchronous callers are
+    // ordered with the device's queued commands. Called from a command running in that same
+    // mailbox (e.g. an observer routing a command back to its device), it runs in place
+    // instead, since the mailbox cannot drain while it waits for itself.
+    public CommandResult call(SmartDevice device, DeviceCommand command, long delayNanos,
+                              Supplier<CompletableFuture<?>> record) {
+        DeviceMailbox current = draining.get();
+        if (current == null || current.device != device) {
+            return submitAfter(device, command, delayNanos, record).join();
+        }
+        if (delayNanos > 0) {
+            LockSupport.parkNanos(delayNanos);
+        }
+        if (record != null) {
+            try {
+                record.get().join();
+            } catch (RuntimeException e) {
+                Throwable error = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                System.out.println("Command journal unavailable, dropping command for " + device.getName());
+                return CommandResult.failed(device.getName(), error);
+            }
+        }
+        try {
+            device.execute(command);
+            return CommandResult.executed(device.getName());
+        } catch (RuntimeException e) {
+            return CommandResult.failed(device.getName(), e);
+        }
+    }
+
+    // Runs an arbitrary action in the device's mailbox, ordered with its other commands
+    public CompletableFuture<CommandResult> submit(SmartDevice device, Runnable action) {
+        return submit(device, action, null, null);
+    }
+
+    public CompletableFuture<CommandResult> submit(SmartDevice device, Runnable action,
+                                                  Supplier<CompletableFuture<?>> record) {
+        return submit(device, action, null, record);
+    }
+
+    private CompletableFuture<CommandResult> submit(SmartDevice device, Runnable action, CommandType coalesceKey,
+                                                   Supplier<CompletableFuture<?>> record) {
+        CompletableFuture<CommandResult> future = new CompletableFuture<>();
+        if (!accepting) {
+            future.complete(CommandResult.rejected(device.getName(), "Command pipeline is shut down"));
+            return future;
+        }
+
+        DeviceMailbox mailbox = mailboxes.computeIfAbsent(device, DeviceMailbox::new);
+        if (!mailbox.offer(new PendingCommand(action, future, coalesceKey, record))) {
+            future.complete(CommandResult.rejected(device.getName(), "Mailbox full"));
+        }
+        return future;
+    }
+
+    // Called when the device is removed: its mailbox is dropped once its queued commands have run
+    public void forget(SmartDevice device) {
+        DeviceMailbox mailbox = mailboxes.get(device);
+        if (mailbox != null) {
+            mailbox.retire();
+        }
+    }
+
+    public int getMailboxCount() {
+        return mailboxes.size();
+    }
+
+    public int getPendingCommands() {
+        return pendingCommands.get();
+    }
+
+    public long getCoalescedCommands() {
+        return coalescedCommands.get();
+    }
+
+    // Stops accepting commands, waits for queued commands to finish, then stops the workers.
+    // Returns false if the timeout elapsed first.
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        accepting = false;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (drainLock) {
+            while (pendingCommands.get() > 0) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    break;
+                }
+                try {
+                    drainLock.wait(remainingMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        scheduler.shutdown();
+        executor.shutdown();
+        try {
+            long remainingNanos = Math.max(0, deadline - System.nanoTime());
+            return executor.awaitTermination(remainingNanos, TimeUnit.NANOSECONDS) && pendingCommands.get() == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static <T extends ThreadPoolExecutor> T idleTimingOut(T pool) {
+        pool.setKeepAliveTime(IDLE_THREAD_SECONDS, TimeUnit.SECONDS);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private void commandFinished() {
+        if (pendingCommands.decrementAndGet() == 0) {
+            synchronized (drainLock) {
+                drainLock.notifyAll();
+            }
+        }
+    }
+
+    private static final class PendingCommand {
+        Runnable action;
+        CompletableFuture<CommandResult> future;
+        final CommandType coalesceKey;
+        Supplier<CompletableFuture<?>> record;
+        // Set once the record has been handed to the journal; the command is then final
+        CompletableFuture<?> durable;
+
+        PendingCommand(Runnable action, CompletableFuture<CommandResult> future, CommandType coalesceKey,
+                       Supplier<CompletableFuture<?>> record) {
+            this.action = action;
+            this.future = future;
+            this.coalesceKey = coalesceKey;
+            this.record = record;
+        }
+    }
+
+    private final class DeviceMailbox {
+        private final SmartDevice device;
+        // Guarded by this mailbox
+        private final ArrayDeque<PendingCommand> queue;
+        private final Map<CommandType, PendingCommand> pendingByType;
+        private boolean scheduled;
+        private boolean retired;
+
+        DeviceMailbox(SmartDevice device) {
+            this.device = device;
+            this.queue = new ArrayDeque<>();
+            this.pendingByType = new EnumMap<>(CommandType.class);
+        }
+
+        boolean offer(PendingCommand pending) {
+            CompletableFuture<CommandResult> superseded = null;
+            boolean startDrain = false;
+
+            synchronized (this) {
+                PendingCommand previous = pending.coalesceKey == null ? null : pendingByType.get(pending.coalesceKey);
+                if (previous != null && queue.peekLast() == previous) {
+                    // Nothing was queued after the previous value: overwrite it in place
+                    superseded = previous.future;
+                    previous.action = pending.action;
+                    previous.future = pending.future;
+                    previous.record = pending.record;
+                } else {
+                    if (previous != null) {
+                        // Drop the stale value and queue the new one behind the commands
+                        // that followed it, so their relative order is preserved
+                        queue.removeLastOccurrence(previous);
+                        superseded = previous.future;
+                    } else if (queue.size() >= mailboxCapacity) {
+                        return false;
+                    } else {
+                        pendingCommands.incrementAndGet();
+                    }
+                    queue.addLast(pending);
+                    if (pending.coalesceKey != null) {
+                        pendingByType.put(pending.coalesceKey, pending);
+                    }
+                }
+
+                if (!scheduled) {
+                    scheduled = true;
+                    startDrain = true;
+                }
+            }
+
+            if (superseded != null) {
+                coalescedCommands.incrementAndGet();
+                superseded.complete(CommandResult.coalesced(device.getName()));
+            }
+            if (startDrain) {
+                long window = coalescingWindowMillis;
+                if (coalescing && window > 0) {
+                    scheduleDelayed(window);
+                } else {
+                    schedule();
+                }
+            }
+            return true;
+        }
+
+        synchronized void retire() {
+            retired = true;
+            if (!scheduled) {
+                mailboxes.remove(device, this);
+            }
+        }
+
+        // Caller holds the mailbox; a retired mailbox leaves the map once it runs dry
+        private void idle() {
+            scheduled = false;
+            if (retired) {
+                mailboxes.remove(device, this);
+            }
+        }
+
+        private void scheduleDelayed(long windowMillis) {
+            try {
+                scheduler.schedule(this::schedule, windowMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                rejectAll("Command pipeline is shut down");
+            }
+        }
+
+        private void drain() {
+            draining.set(this);
+            try {
+                for (int i = 0; i < DRAIN_BATCH_SIZE; i++) {
+                    PendingCommand pending = pollReady();
+                    if (pending == null) {
+                        return;
+                    }
+                    run(pending);
+                }
+            } finally {
+                draining.remove();
+            }
+
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    idle();
+                    return;
+                }
+            }
+            // More work left: yield the worker and come back
+            schedule();
+        }
+
+        // The next command whose record is durable. Returns null with the mailbox still
+        // scheduled if the head is waiting for the journal; it is drained again once it is not.
+        private synchronized PendingCommand pollReady() {
+            PendingCommand head = queue.peekFirst();
+            if (head != null && head.record != null && head.durable == null) {
+                journalQueued();
+            }
+            if (head != null && head.durable != null && !head.durable.isDone()) {
+                head.durable.whenComplete((ignored, error) -> schedule());
+                return null;
+            }
+            return poll();
+        }
+
+        // Writes the records of every queued command not journaled yet, in queue order, so a
+        // burst to one device shares the journal's group commits. Journaled commands can no
+        // longer be coalesced away.
+        private void journalQueued() {
+            for (PendingCommand pending : queue) {
+                if (pending.record == null || pending.durable != null) {
+                    continue;
+                }
+                try {
+                    pending.durable = pending.record.get();
+                } catch (RuntimeException e) {
+                    pending.durable = CompletableFuture.failedFuture(e);
+                }
+                if (pending.coalesceKey != null && pendingByType.get(pending.coalesceKey) == pending) {
+                    pendingByType.remove(pending.coalesceKey);
+                }
+            }
+        }
+
+        private synchronized PendingCommand poll() {
+            PendingCommand pending = queue.pollFirst();
+            if (pending == null) {
+                idle();
+            } else if (pending.coalesceKey != null && pendingByType.get(pending.coalesceKey) == pending) {
+                pendingByType.remove(pending.coalesceKey);
+            }
+            return pending;
+        }
+
+        private void run(PendingCommand pending) {
+            try {
+                if (pending.durable != null && pending.durable.isCompletedExceptionally()) {
+                    // Not journaled, so it must not run either
+                    Throwable error = pending.durable.handle((ignored, e) -> e).join();
+                    if (error instanceof CompletionException && error.getCause() != null) {
+                        error = error.getCause();
+                    }
+                    System.out.println("Command journal unavailable, dropping command for " + device.getName());
+                    pending.future.complete(CommandResult.failed(device.getName(), error));
+                    return;
+                }
+                pending.action.run();
+                pending.future.complete(CommandResult.executed(device.getName()));
+            } catch (RuntimeException e) {
+                pending.future.complete(CommandResult.failed(device.getName(), e));
+            } finally {
+                commandFinished();
+            }
+        }
+
+        private void rejectAll(String reason) {
+            PendingCommand pending;
+            while ((pending = poll()) != null) {
+                pending.future.complete(CommandResult.rejected(device.getName(), reason));
+                commandFinished();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package core.services;
+
+// Outcome of a routed command, used to complete asynchronous routing futures
+public final class CommandResult {
+
+    public enum Status {
+        EXECUTED,
+        DEVICE_NOT_FOUND,
+        REJECTED,
+        FAILED,
+        COALESCED
+    }
+
+    private final String deviceName;
+    private final Status status;
+    private final String message;
+
+    private CommandResult(String deviceName, Status status, String message) {
+        this.deviceName = deviceName;
+        this.status = status;
+        this.message = message;
+    }
+
+    public static CommandResult executed(String deviceName) {
+        return new CommandResult(deviceName, Status.EXECUTED, null);
+    }
+
+    public static CommandResult notFound(String deviceName) {
+        return new CommandResult(deviceName, Status.DEVICE_NOT_FOUND, "Target device not found");
+    }
+
+    public static CommandResult rejected(String deviceName, String reason) {
+        return new CommandResult(deviceName, Status.REJECTED, reason);
+    }
+
+    public static CommandResult coalesced(String deviceName) {
+        return new CommandResult(deviceName, Status.COALESCED, "Superseded by a newer command");
+    }
+
+    public static CommandResult failed(String deviceName, Throwable error) {
+        return new CommandResult(deviceName, Status.FAILED, String.valueOf(error.getMessage()));
+    }
+
+    public String getDeviceName() {
+        return deviceName;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isSuccess() {
+        return status == Status.EXECUTED;
+    }
+
+    @Override
+    public String toString() {
+        return deviceName + ": " + status + (message != null ? " (" + message + ")" : "");
+    }
+}
@@ -1,23 +1,308 @@
 package core.services;
 
+import core.Capability;
+import core.DeviceCommand;
+import core.DeviceEvent;
+import core.EventSink;
+import core.EventType;
 import core.SmartDevice;
 import core.managers.DeviceManager;
+import core.managers.Scene;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class CommandRouter {
+    private static final int DEFAULT_MAILBOX_CAPACITY = 256;
+
+    // Bound to devices while journaled commands are replayed: takes every event the device
+    // raises, so none reaches its observers, the hub or users
+    private static final EventSink SILENT = new EventSink() {
+        @Override
+        public void broadcastNotification(SmartDevice source, String event, String message) {
+        }
+
+        @Override
+        public boolean publish(DeviceEvent event) {
+            return true;
+        }
+    };
+
     private final DeviceManager deviceManager;
+    private final NotificationService notificationService;
+    private final CommandPipeline pipeline;
+    private final AdmissionController admissionController;
+    private volatile CommandJournal journal;
+
+    public CommandRouter(DeviceManager deviceManager, NotificationService notificationService) {
+        this(deviceManager, notificationService, new CommandPipeline(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), DEFAULT_MAILBOX_CAPACITY));
+    }
 
-    public CommandRouter(DeviceManager deviceManager) {
+    public CommandRouter(DeviceManager deviceManager, NotificationService notificationService,
+                         CommandPipeline pipeline) {
         this.deviceManager = deviceManager;
+        this.notificationService = notificationService;
+        this.pipeline = pipeline;
+        this.admissionController = new AdmissionController();
+    }
+
+    // Drops the per-device state kept for a removed device
+    public void deviceRemoved(SmartDevice device) {
+        pipeline.forget(device);
+    }
+
+    public CommandResult routeCommand(SmartDevice source, String targetDeviceName, String command, String[] params) {
+        return routeCommand(source, targetDeviceName, DeviceCommand.compile(command, params));
     }
 
-    public void routeCommand(SmartDevice source, String targetDeviceName, String command, String[] params) {
+    public CommandResult routeCommand(SmartDevice source, String targetDeviceName, DeviceCommand command) {
         SmartDevice targetDevice = deviceManager.findDeviceByName(targetDeviceName);
         
-        if (targetDevice != null) {
-            System.out.println("Routing command from " + source.getName() + " to " + targetDeviceName + ": " + command);
-            targetDevice.executeAction(command, params);
-        } else {
+        if (targetDevice == null) {
             System.out.println("Target device not found: " + targetDeviceName);
+            return CommandResult.notFound(targetDeviceName);
+        }
+
+        long delayNanos = admissionController.admit(sourceName(source), targetDeviceName);
+        if (delayNanos == AdmissionController.REJECTED) {
+            return shed(source, targetDeviceName, command);
+        }
+
+        System.out.println("Routing command from " + sourceName(source) + " to " + targetDeviceName + ": " + command);
+        // Goes through the device's mailbox like async commands, so the two never overlap and
+        // the journal order is the execution order. Under the queue policy the caller waits
+        // out the delay, not the device.
+        CommandResult result = pipeline.call(targetDevice, command, delayNanos,
+                journalRecord(source, targetDevice, new DeviceCommand[] {command}));
+        if (result.getStatus() == CommandResult.Status.FAILED) {
+            System.out.println("Command " + command + " failed on " + targetDeviceName + ": "
+                    + result.getMessage());
+        }
+        return result;
+    }
+
+    public CompletableFuture<CommandResult> routeCommandAsync(SmartDevice source, String targetDeviceName,
+                                                              String command, String[] params) {
+        return routeCommandAsync(source, targetDeviceName, DeviceCommand.compile(command, params));
+    }
+
+    // Queues the command on the target device's mailbox and returns immediately; the device
+    // action and its observer/notification cascade run on a pipeline worker
+    public CompletableFuture<CommandResult> routeCommandAsync(SmartDevice source, String targetDeviceName,
+                                                              DeviceCommand command) {
+        SmartDevice targetDevice = deviceManager.findDeviceByName(targetDeviceName);
+
+        if (targetDevice == null) {
+            System.out.println("Target device not found: " + targetDeviceName);
+            return CompletableFuture.completedFuture(CommandResult.notFound(targetDeviceName));
+        }
+
+        long delayNanos = admissionController.admit(sourceName(source), targetDeviceName);
+        if (delayNanos == AdmissionController.REJECTED) {
+            return CompletableFuture.completedFuture(shed(source, targetDeviceName, command));
+        }
+
+        System.out.println("Queueing command from " + sourceName(source) + " to " + targetDeviceName + ": " + command);
+        return pipeline.submitAfter(targetDevice, command, delayNanos,
+                journalRecord(source, targetDevice, new DeviceCommand[] {command}));
+    }
+
+    public CompletableFuture<BatchResult> routeToRoom(SmartDevice source, String room, String command, String[] params) {
+        return routeBatch(source, "room " + room, deviceManager.getDevicesInRoom(room),
+                DeviceCommand.compile(command, params));
+    }
+
+    public CompletableFuture<BatchResult> routeToCapability(SmartDevice source, Capability capability,
+                                                            String command, String[] params) {
+        return routeBatch(source, "all " + capability + " devices",
+                deviceManager.getDevicesWithCapability(capability), DeviceCommand.compile(command, params));
+    }
+
+    public CompletableFuture<BatchResult> routeToGroup(SmartDevice source, String groupName,
+                                                       String command, String[] params) {
+        return routeBatch(source, "group " + groupName, deviceManager.getGroupMembers(groupName),
+                DeviceCommand.compile(command, params));
+    }
+
+    // Sends one command to a set of devices resolved up front. Devices run in parallel on
+    // their own mailboxes; the notifications they raise are combined into a single one
+    // sent when the whole batch has finished.
+    public CompletableFuture<BatchResult> routeBatch(SmartDevice source, String targetLabel,
+                                                     Collection<SmartDevice> targets, DeviceCommand command) {
+        SmartDevice[] devices = new LinkedHashSet<>(targets).toArray(new SmartDevice[0]);
+        DeviceCommand[] single = {command};
+        DeviceCommand[][] commands = new DeviceCommand[devices.length][];
+        Arrays.fill(commands, single);
+
+        System.out.println("Routing command from " + sourceName(source) + " to " + targetLabel
+                + " (" + devices.length + " devices): " + command);
+        return dispatch(source, targetLabel, command.toString(), devices, commands, new ArrayList<>());
+    }
+
+    // Applies a scene in one operation: its compiled plan is fanned out to the device
+    // mailboxes, each device running its own actions in order, and one notification is sent
+    // once every device has finished. Devices the scene names but that are not registered
+    // are reported as not found.
+    public CompletableFuture<BatchResult> routeScene(SmartDevice source, Scene scene) {
+        Scene.Plan plan = scene.compile(deviceManager);
+        SmartDevice[] devices = new SmartDevice[plan.size()];
+        DeviceCommand[][] commands = new DeviceCommand[plan.size()][];
+        for (int i = 0; i < plan.size(); i++) {
+            devices[i] = plan.getDevice(i);
+            commands[i] = plan.getCommands(i);
+        }
+
+        List<CommandResult> unresolved = new ArrayList<>(plan.getUnresolved().size());
+        for (String deviceName : plan.getUnresolved()) {
+            System.out.println("Scene " + scene.getName() + ": device not found: " + deviceName);
+            unresolved.add(CommandResult.notFound(deviceName));
+        }
+
+        System.out.println("Applying scene " + scene.getName() + " from " + sourceName(source)
+                + " (" + devices.length + " devices)");
+        return dispatch(source, "scene " + scene.getName(), "scene " + scene.getName(), devices, commands, unresolved);
+    }
+
+    // Journals every routed command before it runs; null disables journaling
+    public void setJournal(CommandJournal journal) {
+        this.journal = journal;
+    }
+
+    public CommandJournal getJournal() {
+        return journal;
+    }
+
+    // Re-applies journaled state-setting commands directly to the devices, bypassing admission
+    // control and the journal itself, to rebuild device state after a restart. Commands that
+    // act rather than set state (photos, recordings, simulated motion...) are skipped, and the
+    // events of replayed commands reach neither observers nor users, since they already did
+    // the first time. Returns the number applied.
+    public int replayJournal(Path path) throws IOException {
+        int[] applied = new int[1];
+        int[] skipped = new int[1];
+        CommandJournal.replay(path, entry -> {
+            SmartDevice device = deviceManager.findDeviceByName(entry.getTarget());
+            if (device == null) {
+                System.out.println("Skipping journaled command for unknown device: " + entry.getTarget());
+                return;
+            }
+            DeviceCommand command = DeviceCommand.compile(entry.getAction(), entry.getParams());
+            if (!command.getType().isStateSetting()) {
+                skipped[0]++;
+                return;
+            }
+            EventSink sink = device.getEventSink();
+            device.setEventSink(SILENT);
+            try {
+                device.execute(command);
+                applied[0]++;
+            } catch (RuntimeException e) {
+                System.out.println("Journaled command " + command + " failed on " + entry.getTarget() + ": "
+                        + e.getMessage());
+            } finally {
+                device.setEventSink(sink);
+            }
+        });
+        System.out.println("Replayed " + applied[0] + " journaled commands from " + path
+                + " (" + skipped[0] + " non-state commands skipped)");
+        return applied[0];
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    // Merges bursts of pending "set" commands to the same device so only the latest value runs
+    public void enableCoalescing(long windowMillis) {
+        pipeline.enableCoalescing(windowMillis);
+    }
+
+    public void disableCoalescing() {
+        pipeline.disableCoalescing();
+    }
+
+    public long getCoalescedCommands() {
+        return pipeline.getCoalescedCommands();
+    }
+
+    // Stops accepting async commands and waits for the queued ones to drain
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        return pipeline.shutdown(timeout, unit);
+    }
+
+    private CommandResult shed(SmartDevice source, String targetDeviceName, DeviceCommand command) {
+        System.out.println("Rate limit exceeded, dropping command from " + sourceName(source)
+                + " to " + targetDeviceName + ": " + command);
+        return CommandResult.rejected(targetDeviceName, "Rate limit exceeded");
+    }
+
+    private static String sourceName(SmartDevice source) {
+        return source == null ? "unknown source" : source.getName();
+    }
+
+    // Admits, journals and queues each device's commands as one mailbox task, then combines
+    // the per-device results and notifications once all of them have completed
+    private CompletableFuture<BatchResult> dispatch(SmartDevice source, String targetLabel, String description,
+                                                    SmartDevice[] devices, DeviceCommand[][] commands,
+                                                    List<CommandResult> presetResults) {
+        NotificationBatch batch = new NotificationBatch();
+        List<CompletableFuture<CommandResult>> futures = new ArrayList<>(devices.length);
+        for (int i = 0; i < devices.length; i++) {
+            SmartDevice device = devices[i];
+            DeviceCommand[] deviceCommands = commands[i];
+            // Batches are not delayed by the queue policy: over-limit devices are reported as
+            // rejected, without reserving tokens they would never use
+            if (admissionController.admitNow(sourceName(source), device.getName()) == AdmissionController.REJECTED) {
+                futures.add(CompletableFuture.completedFuture(
+                        CommandResult.rejected(device.getName(), "Rate limit exceeded")));
+                continue;
+            }
+            futures.add(pipeline.submit(device, () ->
+                    notificationService.runInBatch(batch, () -> {
+                        for (DeviceCommand command : deviceCommands) {
+                            device.execute(command);
+                        }
+                    }), journalRecord(source, device, deviceCommands)));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<CommandResult> results = new ArrayList<>(presetResults.size() + futures.size());
+            results.addAll(presetResults);
+            for (CompletableFuture<CommandResult> future : futures) {
+                results.add(future.join());
+            }
+            BatchResult result = new BatchResult(targetLabel, results);
+            notificationService.broadcast(DeviceEvent.withMessage(source, EventType.BATCH_COMMAND,
+                    description + " sent to " + result + "; " + batch.describe()));
+            return result;
+        });
+    }
+
+    // Writes the journal records of commands the pipeline has accepted (see CommandPipeline);
+    // null when journaling is off. Records become durable in append order, so replay applies
+    // each device's commands in the order they ran.
+    private Supplier<CompletableFuture<?>> journalRecord(SmartDevice source, SmartDevice target,
+                                                        DeviceCommand[] commands) {
+        CommandJournal currentJournal = journal;
+        if (currentJournal == null) {
+            return null;
         }
+        return () -> {
+            CompletableFuture<?>[] records = new CompletableFuture<?>[commands.length];
+            for (int i = 0; i < commands.length; i++) {
+                records[i] = currentJournal.append(sourceName(source), target.getName(),
+                        commands[i].getAction(), commands[i].getParams());
+            }
+            return records.length == 1 ? records[0] : CompletableFuture.allOf(records);
+        };
     }
-} 
\ No newline at end of file
+}
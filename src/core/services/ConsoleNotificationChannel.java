@@ -0,0 +1,21 @@
+package core.services;
+
+import core.DeviceEvent;
+import core.User;
+
+import java.util.List;
+
+// Default channel: prints through User.onEvent, with a header when several events are
+// delivered together
+public class ConsoleNotificationChannel implements NotificationChannel {
+
+    @Override
+    public void deliver(User user, List<DeviceEvent> events) {
+        if (events.size() > 1) {
+            System.out.println("[" + events.size() + " NOTIFICATIONS for " + user.getName() + "]");
+        }
+        for (DeviceEvent event : events) {
+            user.onEvent(event);
+        }
+    }
+}
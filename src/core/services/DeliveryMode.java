@@ -0,0 +1,67 @@
+package core.services;
+
+// How a user's notifications are delivered: one at a time as they happen, in batches of up
+// to N events or T milliseconds (whichever comes first), or as a periodic digest
+public final class DeliveryMode {
+
+    public enum Kind {
+        IMMEDIATE,
+        BATCHED,
+        DIGEST
+    }
+
+    private static final DeliveryMode IMMEDIATE = new DeliveryMode(Kind.IMMEDIATE, 1, 0);
+
+    private final Kind kind;
+    private final int maxEvents;
+    private final long periodMillis;
+
+    private DeliveryMode(Kind kind, int maxEvents, long periodMillis) {
+        this.kind = kind;
+        this.maxEvents = maxEvents;
+        this.periodMillis = periodMillis;
+    }
+
+    public static DeliveryMode immediate() {
+        return IMMEDIATE;
+    }
+
+    public static DeliveryMode batched(int maxEvents, long maxDelayMillis) {
+        if (maxEvents < 1 || maxDelayMillis < 1) {
+            throw new IllegalArgumentException("Batch size and delay must be positive");
+        }
+        return new DeliveryMode(Kind.BATCHED, maxEvents, maxDelayMillis);
+    }
+
+    public static DeliveryMode digest(long periodMillis) {
+        if (periodMillis < 1) {
+            throw new IllegalArgumentException("Digest period must be positive");
+        }
+        return new DeliveryMode(Kind.DIGEST, Integer.MAX_VALUE, periodMillis);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getMaxEvents() {
+        return maxEvents;
+    }
+
+    // Longest wait of a batch, or the digest period
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case BATCHED:
+                return "batched (" + maxEvents + " events or " + periodMillis + " ms)";
+            case DIGEST:
+                return "digest every " + periodMillis + " ms";
+            default:
+                return "immediate";
+        }
+    }
+}
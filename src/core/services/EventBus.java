@@ -0,0 +1,221 @@
+package core.services;
+
+import core.DeviceEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// Hub-wide device event bus on a preallocated ring buffer, in the style of a disruptor.
+//
+// Publishers claim the next sequence number, store the event in the slot it maps to and mark
+// it published; the bus allocates nothing per event and takes no lock. Every consumer runs on its own thread and walks
+// the sequence in order, so each consumer sees every event in publication order, and events
+// from one device keep the order the device raised them in. A publisher only waits when the
+// slowest consumer is a full ring behind.
+public class EventBus {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final class EventConsumer implements Runnable {
+        private final String name;
+        private final Consumer<DeviceEvent> handler;
+        // Last sequence this consumer has finished with
+        private final AtomicLong sequence;
+        private Thread thread;
+
+        EventConsumer(String name, Consumer<DeviceEvent> handler) {
+            this.name = name;
+            this.handler = handler;
+            this.sequence = new AtomicLong(-1);
+        }
+
+        @Override
+        public void run() {
+            long next = sequence.get() + 1;
+            int idle = 0;
+            while (true) {
+                int index = (int) next & mask;
+                if (published.get(index) == next) {
+                    DeviceEvent event = ring[index];
+                    try {
+                        handler.accept(event);
+                    } catch (Throwable e) {
+                        // Errors too: a dead consumer would stop advancing its sequence and
+                        // leave publishers waiting for capacity forever
+                        System.err.println("Event consumer " + name + " failed on " + event.getType() + ": " + e);
+                    }
+                    sequence.set(next);
+                    next++;
+                    idle = 0;
+                } else if (!running) {
+                    return;
+                } else {
+                    idle = idle(idle);
+                }
+            }
+        }
+    }
+
+    private final DeviceEvent[] ring;
+    private final int mask;
+    // published[i] holds the sequence last published into ring[i]
+    private final AtomicLongArray published;
+    private final AtomicLong claimed;
+    private final AtomicInteger activePublishers;
+    private final List<EventConsumer> consumers;
+    private volatile long cachedGatingSequence;
+    private volatile boolean accepting;
+    private volatile boolean running;
+
+    // The capacity is rounded up to a power of two
+    public EventBus(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.ring = new DeviceEvent[size];
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.claimed = new AtomicLong(-1);
+        this.activePublishers = new AtomicInteger();
+        this.consumers = new ArrayList<>();
+        this.cachedGatingSequence = -1;
+        this.accepting = false;
+        this.running = false;
+    }
+
+    // Consumers must be added before start(); each one gets its own thread
+    public synchronized void addConsumer(String name, Consumer<DeviceEvent> handler) {
+        if (running) {
+            throw new IllegalStateException("Event bus already started");
+        }
+        consumers.add(new EventConsumer(name, handler));
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (EventConsumer consumer : consumers) {
+            consumer.thread = new Thread(consumer, "event-bus-" + consumer.name);
+            consumer.thread.setDaemon(true);
+            consumer.thread.start();
+        }
+        accepting = true;
+    }
+
+    // Returns false if the bus is not running, in which case the caller delivers the event itself.
+    // Events raised by a consumer (e.g. an observer that controls another device) are also
+    // left to the caller: a consumer waiting on a full ring it has to drain would never wake.
+    public boolean publish(DeviceEvent event) {
+        activePublishers.incrementAndGet();
+        try {
+            if (!accepting || isConsumerThread()) {
+                return false;
+            }
+            long sequence = claimed.incrementAndGet();
+            awaitCapacity(sequence);
+
+            int index = (int) sequence & mask;
+            ring[index] = event;
+            published.set(index, sequence);
+            return true;
+        } finally {
+            activePublishers.decrementAndGet();
+        }
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    public long getPublishedCount() {
+        return claimed.get() + 1;
+    }
+
+    // Stops accepting events, lets every consumer catch up with what was published, then
+    // stops the consumer threads. Returns false if the timeout elapsed first.
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        synchronized (this) {
+            if (!running) {
+                return true;
+            }
+            accepting = false;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        boolean drained = true;
+        while (activePublishers.get() > 0 || minimumConsumerSequence() < claimed.get()) {
+            if (System.nanoTime() - deadline >= 0) {
+                drained = false;
+                break;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+
+        running = false;
+        for (EventConsumer consumer : consumers) {
+            try {
+                consumer.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return drained;
+    }
+
+    // Waits until the slot for the sequence has been consumed by every consumer
+    private void awaitCapacity(long sequence) {
+        long wrapPoint = sequence - ring.length;
+        if (wrapPoint <= cachedGatingSequence) {
+            return;
+        }
+        int idle = 0;
+        long gating;
+        while (wrapPoint > (gating = minimumConsumerSequence())) {
+            idle = idle(idle);
+        }
+        cachedGatingSequence = gating;
+    }
+
+    private boolean isConsumerThread() {
+        Thread current = Thread.currentThread();
+        for (EventConsumer consumer : consumers) {
+            if (consumer.thread == current) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long minimumConsumerSequence() {
+        long minimum = claimed.get();
+        for (EventConsumer consumer : consumers) {
+            minimum = Math.min(minimum, consumer.sequence.get());
+        }
+        return minimum;
+    }
+
+    // Spins briefly, then yields, then parks, so an idle bus does not burn a core
+    private static int idle(int idle) {
+        if (idle < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (idle < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+            return idle;
+        }
+        return idle + 1;
+    }
+}
@@ -0,0 +1,263 @@
+package core.services;
+
+import core.DeviceEvent;
+import core.EventType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Queries a log written by BinaryEventLog through read-only memory maps. The sparse index
+// selects the blocks overlapping the time range, each block's summary rules out blocks
+// without the wanted devices or event types, and only the remaining blocks' records are
+// read, so a narrow query touches a few pages of a large log. The log is mapped in fixed-size
+// windows as queries reach them, so its size is not limited by what one mapping can hold.
+public class EventLogReader implements AutoCloseable {
+
+    private static final long WINDOW_BYTES = 64L * 1024 * 1024;
+
+    private final FileChannel log;
+    private final long size;
+    // Mapped windows of the log by window number; guarded by this reader
+    private final Map<Long, MappedByteBuffer> windows;
+    // Types named in the log but not registered in this process, one object per name
+    private final Map<String, EventType> unregisteredTypes;
+    // minNanos, maxNanos, offset, length per block
+    private final long[] blockIndex;
+    private final int blockCount;
+    // Latest end time of the blocks up to each block and earliest start time from each block
+    // on, so the blocks of a time range are found by binary search even though concurrent
+    // writers can leave neighbouring blocks slightly out of order
+    private final long[] maxNanosSoFar;
+    private final long[] minNanosFrom;
+    private long blocksRead;
+
+    public EventLogReader(Path path) throws IOException {
+        this.log = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = log.size();
+        this.windows = new HashMap<>();
+        this.unregisteredTypes = new HashMap<>();
+
+        Path indexPath = BinaryEventLog.indexPath(path);
+        try {
+            long[] entries = Files.exists(indexPath) ? readIndex(indexPath, size) : null;
+            this.blockIndex = entries != null ? entries : scanHeaders();
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+        this.blockCount = blockIndex.length / 4;
+        this.maxNanosSoFar = new long[blockCount];
+        this.minNanosFrom = new long[blockCount];
+        for (int b = 0; b < blockCount; b++) {
+            maxNanosSoFar[b] = Math.max(blockIndex[b * 4 + 1], b == 0 ? Long.MIN_VALUE : maxNanosSoFar[b - 1]);
+        }
+        for (int b = blockCount - 1; b >= 0; b--) {
+            minNanosFrom[b] = Math.min(blockIndex[b * 4], b == blockCount - 1 ? Long.MAX_VALUE : minNanosFrom[b + 1]);
+        }
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    // Blocks whose records were read by queries so far, a measure of how selective they were
+    public synchronized long getBlocksRead() {
+        return blocksRead;
+    }
+
+    // Passes the events from fromNanos to toNanos (epoch nanoseconds, inclusive) of the given
+    // devices and event types to the handler in log order; empty sets mean any. Returns the
+    // number of matching events.
+    public synchronized int query(long fromNanos, long toNanos, Set<String> deviceNames, Set<EventType> types,
+                                  Consumer<DeviceEvent> handler) throws IOException {
+        int matched = 0;
+        for (int b = firstBlockEndingAfter(fromNanos); b < blockCount && minNanosFrom[b] <= toNanos; b++) {
+            if (blockIndex[b * 4 + 1] < fromNanos || blockIndex[b * 4] > toNanos) {
+                continue;
+            }
+            ByteBuffer block = block(blockIndex[b * 4 + 2], (int) blockIndex[b * 4 + 3]);
+            block.position(BinaryEventLog.BLOCK_HEADER_BYTES);
+
+            // Summary: a block without any wanted device or type is skipped unread
+            String[] blockDevices = readStrings(block);
+            boolean[] deviceWanted = select(blockDevices, deviceNames);
+            String[] blockTypeNames = readStrings(block);
+            EventType[] blockTypes = new EventType[blockTypeNames.length];
+            boolean[] typeWanted = new boolean[blockTypeNames.length];
+            boolean anyType = false;
+            for (int i = 0; i < blockTypeNames.length; i++) {
+                blockTypes[i] = typeNamed(blockTypeNames[i]);
+                typeWanted[i] = types.isEmpty() || types.contains(blockTypes[i]);
+                anyType |= typeWanted[i];
+            }
+            if (deviceWanted == null || !anyType) {
+                continue;
+            }
+
+            blocksRead++;
+            while (block.hasRemaining()) {
+                int recordStart = block.position();
+                int recordBytes = block.getInt();
+                long timestamp = block.getLong();
+                int device = block.getShort() & 0xFFFF;
+                int type = block.getShort() & 0xFFFF;
+                if (timestamp < fromNanos || timestamp > toNanos || !deviceWanted[device] || !typeWanted[type]) {
+                    block.position(recordStart + recordBytes);
+                    continue;
+                }
+                long longValue = block.getLong();
+                double doubleValue = block.getDouble();
+                double secondDoubleValue = block.getDouble();
+                int flags = block.get();
+                String text = (flags & BinaryEventLog.FLAG_TEXT) != 0 ? readString(block) : null;
+                String message = (flags & BinaryEventLog.FLAG_MESSAGE) != 0 ? readString(block)
+                        : (flags & BinaryEventLog.FLAG_MESSAGE_IS_TEXT) != 0 ? text : null;
+                block.position(recordStart + recordBytes);
+                handler.accept(DeviceEvent.restore(timestamp, -1, blockDevices[device], blockTypes[type],
+                        longValue, doubleValue, secondDoubleValue, text, message));
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    public int query(long fromNanos, long toNanos, Consumer<DeviceEvent> handler) throws IOException {
+        return query(fromNanos, toNanos, Collections.emptySet(), Collections.emptySet(), handler);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        windows.clear();
+        log.close();
+    }
+
+    // The block as a buffer of its own, position 0 at its header. Blocks inside one window
+    // share its mapping; one that straddles a window boundary is mapped by itself.
+    private ByteBuffer block(long offset, int length) throws IOException {
+        long window = offset / WINDOW_BYTES;
+        long windowStart = window * WINDOW_BYTES;
+        if (offset + length > windowStart + WINDOW_BYTES) {
+            return log.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+        MappedByteBuffer mapped = windows.get(window);
+        if (mapped == null) {
+            mapped = log.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_BYTES, size - windowStart));
+            windows.put(window, mapped);
+        }
+        ByteBuffer block = mapped.duplicate();
+        int start = (int) (offset - windowStart);
+        block.limit(start + length).position(start);
+        return block.slice();
+    }
+
+    // Interned type for the name; one registered by the process that wrote the log but not by
+    // this one is returned as an unregistered type rather than registered from the file
+    private EventType typeNamed(String name) {
+        EventType type = EventType.find(name);
+        return type != null ? type : unregisteredTypes.computeIfAbsent(name, EventType::unregistered);
+    }
+
+    private int firstBlockEndingAfter(long fromNanos) {
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (maxNanosSoFar[mid] < fromNanos) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Null when none of the block's devices is wanted
+    private static boolean[] select(String[] blockDevices, Set<String> wanted) {
+        boolean[] selected = new boolean[blockDevices.length];
+        boolean any = false;
+        for (int i = 0; i < blockDevices.length; i++) {
+            selected[i] = wanted.isEmpty() || wanted.contains(blockDevices[i]);
+            any |= selected[i];
+        }
+        return any ? selected : null;
+    }
+
+    // Index entries pointing past the end of the log (e.g. a torn last block) are ignored
+    private static long[] readIndex(Path indexPath, long logSize) throws IOException {
+        try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            int count = (int) (index.size() / BinaryEventLog.INDEX_ENTRY_BYTES);
+            ByteBuffer buffer = index.map(FileChannel.MapMode.READ_ONLY, 0,
+                    (long) count * BinaryEventLog.INDEX_ENTRY_BYTES);
+            long[] entries = new long[count * 4];
+            int valid = 0;
+            for (int i = 0; i < count; i++) {
+                long min = buffer.getLong();
+                long max = buffer.getLong();
+                long offset = buffer.getLong();
+                int length = buffer.getInt();
+                if (offset + length > logSize) {
+                    break;
+                }
+                entries[valid * 4] = min;
+                entries[valid * 4 + 1] = max;
+                entries[valid * 4 + 2] = offset;
+                entries[valid * 4 + 3] = length;
+                valid++;
+            }
+            return valid == count ? entries : Arrays.copyOf(entries, valid * 4);
+        }
+    }
+
+    // Without an index file, walks the block headers instead
+    private long[] scanHeaders() throws IOException {
+        long[] entries = new long[64];
+        int count = 0;
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(BinaryEventLog.BLOCK_HEADER_BYTES);
+        while (position + BinaryEventLog.BLOCK_HEADER_BYTES <= size) {
+            header.clear();
+            BinaryEventLog.readFully(log, header, position);
+            int blockBytes = header.getInt(4);
+            if (header.getInt(0) != BinaryEventLog.MAGIC || blockBytes < BinaryEventLog.BLOCK_HEADER_BYTES
+                    || position + blockBytes > size) {
+                break;
+            }
+            if ((count + 1) * 4 > entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[count * 4] = header.getLong(12);
+            entries[count * 4 + 1] = header.getLong(20);
+            entries[count * 4 + 2] = position;
+            entries[count * 4 + 3] = blockBytes;
+            count++;
+            position += blockBytes;
+        }
+        return Arrays.copyOf(entries, count * 4);
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        String[] values = new String[buffer.getShort() & 0xFFFF];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(buffer);
+        }
+        return values;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
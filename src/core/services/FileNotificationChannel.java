@@ -0,0 +1,52 @@
+package core.services;
+
+import core.DeviceEvent;
+import core.User;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Stub mail sink: appends each delivery to a file as a plain-text message addressed to the
+// user, so notification delivery can be exercised and inspected offline
+public class FileNotificationChannel implements NotificationChannel, AutoCloseable {
+
+    private final BufferedWriter writer;
+
+    public FileNotificationChannel(Path path) throws IOException {
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized void deliver(User user, List<DeviceEvent> events) {
+        try {
+            writer.write("To: " + user.getName() + " <" + user.getEmail() + ">");
+            writer.newLine();
+            writer.write("Subject: Smart home - " + (events.size() == 1
+                    ? events.get(0).getTypeName() + " from " + events.get(0).getDeviceName()
+                    : events.size() + " notifications"));
+            writer.newLine();
+            writer.write("Date: " + DeviceEvent.formatTimestamp(DeviceEvent.currentEpochNanos()));
+            writer.newLine();
+            writer.newLine();
+            for (DeviceEvent event : events) {
+                writer.write(event.toString());
+                writer.newLine();
+            }
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing notification for " + user.getName() + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,89 @@
+package core.services;
+
+import java.util.concurrent.TimeUnit;
+
+// When a file log starts a new segment and what happens to the sealed ones: compression in
+// the background, and deletion once they are older than the retention age or the log uses
+// more than the retention size. Zero means no limit.
+public final class LogRotationPolicy {
+
+    private static final LogRotationPolicy NONE = new LogRotationPolicy(0, 0, false, 0, 0);
+
+    private final long maxSegmentBytes;
+    private final long maxSegmentMillis;
+    private final boolean compress;
+    private final long retainMillis;
+    private final long retainBytes;
+
+    private LogRotationPolicy(long maxSegmentBytes, long maxSegmentMillis, boolean compress,
+                              long retainMillis, long retainBytes) {
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentMillis = maxSegmentMillis;
+        this.compress = compress;
+        this.retainMillis = retainMillis;
+        this.retainBytes = retainBytes;
+    }
+
+    // A single file that grows without bound
+    public static LogRotationPolicy none() {
+        return NONE;
+    }
+
+    // Rolls to a new segment once the current one reaches maxBytes or is older than maxAge
+    public static LogRotationPolicy segments(long maxBytes, long maxAge, TimeUnit unit) {
+        if (maxBytes < 0 || maxAge < 0 || (maxBytes == 0 && maxAge == 0)) {
+            throw new IllegalArgumentException("A segment needs a size or age limit");
+        }
+        return new LogRotationPolicy(maxBytes, unit.toMillis(maxAge), false, 0, 0);
+    }
+
+    // The with* methods return a copy with the setting changed
+    public LogRotationPolicy withCompression() {
+        return new LogRotationPolicy(maxSegmentBytes, maxSegmentMillis, true, retainMillis, retainBytes);
+    }
+
+    public LogRotationPolicy withRetentionAge(long age, TimeUnit unit) {
+        return new LogRotationPolicy(maxSegmentBytes, maxSegmentMillis, compress, unit.toMillis(age), retainBytes);
+    }
+
+    // Counts the current segment and the sealed ones as stored (compressed or not)
+    public LogRotationPolicy withRetentionBytes(long bytes) {
+        return new LogRotationPolicy(maxSegmentBytes, maxSegmentMillis, compress, retainMillis, bytes);
+    }
+
+    public boolean rolls() {
+        return maxSegmentBytes > 0 || maxSegmentMillis > 0;
+    }
+
+    public long getMaxSegmentBytes() {
+        return maxSegmentBytes;
+    }
+
+    public long getMaxSegmentMillis() {
+        return maxSegmentMillis;
+    }
+
+    public boolean isCompressed() {
+        return compress;
+    }
+
+    public long getRetainMillis() {
+        return retainMillis;
+    }
+
+    public long getRetainBytes() {
+        return retainBytes;
+    }
+
+    @Override
+    public String toString() {
+        if (!rolls()) {
+            return "single file";
+        }
+        return "segments of " + (maxSegmentBytes > 0 ? maxSegmentBytes + " bytes" : "any size")
+                + (maxSegmentMillis > 0 ? " or " + maxSegmentMillis + " ms" : "")
+                + (compress ? ", compressed" : "")
+                + (retainMillis > 0 ? ", kept " + retainMillis + " ms" : "")
+                + (retainBytes > 0 ? ", at most " + retainBytes + " bytes" : "");
+    }
+}
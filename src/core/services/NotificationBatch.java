@@ -0,0 +1,45 @@
+package core.services;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Collects the hub notifications raised while a batch of commands runs, so they can be
+// sent as one combined notification instead of one per device event
+public class NotificationBatch {
+
+    private final Map<String, AtomicInteger> eventCounts;
+    private final AtomicInteger totalEvents;
+
+    public NotificationBatch() {
+        this.eventCounts = new ConcurrentHashMap<>();
+        this.totalEvents = new AtomicInteger();
+    }
+
+    public void add(String event) {
+        eventCounts.computeIfAbsent(event, k -> new AtomicInteger()).incrementAndGet();
+        totalEvents.incrementAndGet();
+    }
+
+    public int getTotalEvents() {
+        return totalEvents.get();
+    }
+
+    public String describe() {
+        if (totalEvents.get() == 0) {
+            return "no device events";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(totalEvents.get()).append(" device events (");
+        boolean first = true;
+        for (Map.Entry<String, AtomicInteger> entry : new TreeMap<>(eventCounts).entrySet()) {
+            if (!first) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey()).append(" x").append(entry.getValue().get());
+            first = false;
+        }
+        return sb.append(")").toString();
+    }
+}
@@ -0,0 +1,12 @@
+package core.services;
+
+import core.DeviceEvent;
+import core.User;
+
+import java.util.List;
+
+// Where a user's notifications end up (console, mail, file...). Called from a delivery
+// worker, never concurrently for the same user; events are in the order they happened.
+public interface NotificationChannel {
+    void deliver(User user, List<DeviceEvent> events);
+}
@@ -0,0 +1,279 @@
+package core.services;
+
+import core.DeviceEvent;
+import core.User;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Per-user notification queues drained by background workers. Broadcasting only appends the
+// event to each recipient's queue; the user's channel is called later, on a worker, in the
+// user's delivery mode. Each queue is drained by at most one worker at a time, so a user
+// sees events in order.
+public class NotificationDelivery {
+
+    // Oldest events are dropped beyond this, e.g. for a long digest period
+    private static final int MAX_PENDING_PER_USER = 10_000;
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<User, UserQueue> queues;
+    private volatile NotificationChannel defaultChannel;
+    private volatile boolean accepting;
+
+    public NotificationDelivery(int workerThreads) {
+        this.executor = new ScheduledThreadPoolExecutor(workerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "notification-delivery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Idle workers exit, so a quiet hub holds no delivery threads
+        this.executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        this.executor.allowCoreThreadTimeOut(true);
+        // Pending batches are flushed explicitly on shutdown instead of waiting for their timers
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor.setRemoveOnCancelPolicy(true);
+        this.queues = new ConcurrentHashMap<>();
+        this.defaultChannel = new ConsoleNotificationChannel();
+        this.accepting = true;
+    }
+
+    public void setDefaultChannel(NotificationChannel channel) {
+        this.defaultChannel = channel;
+    }
+
+    // A null channel means the default channel
+    public void setChannel(User user, NotificationChannel channel) {
+        queueFor(user).channel = channel;
+    }
+
+    public void setMode(User user, DeliveryMode mode) {
+        queueFor(user).setMode(mode);
+    }
+
+    public DeliveryMode getMode(User user) {
+        UserQueue queue = queues.get(user);
+        return queue == null ? DeliveryMode.immediate() : queue.mode;
+    }
+
+    public void enqueue(User user, DeviceEvent event) {
+        if (!accepting) {
+            return;
+        }
+        queueFor(user).offer(event);
+    }
+
+    // Delivers what is still queued for the user, then forgets the user
+    public void remove(User user) {
+        UserQueue queue = queues.remove(user);
+        if (queue != null) {
+            queue.cancelTimer();
+            queue.requestDrain();
+        }
+    }
+
+    public long getDroppedCount(User user) {
+        UserQueue queue = queues.get(user);
+        return queue == null ? 0 : queue.getDropped();
+    }
+
+    // Delivers everything still queued, whatever the users' modes, and stops the workers.
+    // Returns false if the timeout elapsed first.
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        accepting = false;
+        for (UserQueue queue : queues.values()) {
+            queue.cancelTimer();
+            queue.requestDrain();
+        }
+        executor.shutdown();
+        try {
+            return executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // The delivery workers' timer, for notification work that runs on a delay (e.g. the throttle)
+    ScheduledExecutorService getScheduler() {
+        return executor;
+    }
+
+    private UserQueue queueFor(User user) {
+        return queues.computeIfAbsent(user, UserQueue::new);
+    }
+
+    private final class UserQueue {
+        private final User user;
+        private volatile NotificationChannel channel;
+        // Only changed while holding this queue
+        private volatile DeliveryMode mode;
+        // Guarded by this queue
+        private final ArrayDeque<DeviceEvent> pending;
+        private boolean drainScheduled;
+        private ScheduledFuture<?> timer;
+        private long dropped;
+
+        UserQueue(User user) {
+            this.user = user;
+            this.pending = new ArrayDeque<>();
+            this.mode = DeliveryMode.immediate();
+        }
+
+        synchronized void setMode(DeliveryMode newMode) {
+            cancelTimer();
+            mode = newMode;
+            if (newMode.getKind() == DeliveryMode.Kind.DIGEST) {
+                timer = schedule(() -> {
+                    if (hasPending()) {
+                        requestDrain();
+                    }
+                }, newMode.getPeriodMillis(), true);
+            } else if (!pending.isEmpty()) {
+                startDrain();
+            }
+        }
+
+        void offer(DeviceEvent event) {
+            boolean drainNow;
+            synchronized (this) {
+                if (pending.size() >= MAX_PENDING_PER_USER) {
+                    pending.pollFirst();
+                    dropped++;
+                }
+                pending.addLast(event);
+
+                switch (mode.getKind()) {
+                    case IMMEDIATE:
+                        drainNow = true;
+                        break;
+                    case BATCHED:
+                        drainNow = pending.size() >= mode.getMaxEvents();
+                        if (!drainNow && timer == null) {
+                            // The first event of a batch starts its clock
+                            timer = schedule(this::requestDrain, mode.getPeriodMillis(), false);
+                        }
+                        break;
+                    default:
+                        // Digests go out on their periodic timer
+                        drainNow = false;
+                        break;
+                }
+                drainNow = drainNow && !drainScheduled;
+                if (drainNow) {
+                    drainScheduled = true;
+                }
+            }
+            if (drainNow) {
+                execute();
+            }
+        }
+
+        void requestDrain() {
+            synchronized (this) {
+                if (drainScheduled) {
+                    return;
+                }
+                drainScheduled = true;
+            }
+            execute();
+        }
+
+        synchronized long getDropped() {
+            return dropped;
+        }
+
+        private synchronized boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        // Caller holds the lock
+        private void startDrain() {
+            if (!drainScheduled) {
+                drainScheduled = true;
+                execute();
+            }
+        }
+
+        private void execute() {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Shutting down: deliver on the caller's thread rather than lose the events
+                drain();
+            }
+        }
+
+        private void drain() {
+            List<DeviceEvent> events;
+            boolean oneByOne;
+            synchronized (this) {
+                oneByOne = mode.getKind() == DeliveryMode.Kind.IMMEDIATE;
+                if (mode.getKind() == DeliveryMode.Kind.BATCHED) {
+                    cancelTimer();
+                }
+                int count = Math.min(pending.size(), mode.getMaxEvents());
+                events = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    events.add(pending.pollFirst());
+                }
+            }
+
+            NotificationChannel target = channel != null ? channel : defaultChannel;
+            if (oneByOne) {
+                for (DeviceEvent event : events) {
+                    deliver(target, Collections.singletonList(event));
+                }
+            } else if (!events.isEmpty()) {
+                deliver(target, events);
+            }
+
+            synchronized (this) {
+                drainScheduled = false;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                // Events that arrived while delivering; when shutting down nothing waits for a timer
+                if (!accepting || mode.getKind() == DeliveryMode.Kind.IMMEDIATE
+                        || pending.size() >= mode.getMaxEvents()) {
+                    startDrain();
+                } else if (mode.getKind() == DeliveryMode.Kind.BATCHED && timer == null) {
+                    timer = schedule(this::requestDrain, mode.getPeriodMillis(), false);
+                }
+            }
+        }
+
+        private void deliver(NotificationChannel target, List<DeviceEvent> events) {
+            try {
+                target.deliver(user, events);
+            } catch (RuntimeException e) {
+                System.err.println("Error delivering notifications to " + user.getName() + ": " + e.getMessage());
+            }
+        }
+
+        synchronized void cancelTimer() {
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+        }
+
+        private ScheduledFuture<?> schedule(Runnable task, long millis, boolean periodic) {
+            try {
+                return periodic
+                        ? executor.scheduleAtFixedRate(task, millis, millis, TimeUnit.MILLISECONDS)
+                        : executor.schedule(task, millis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                return null;
+            }
+        }
+    }
+}
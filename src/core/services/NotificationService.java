@@ -1,20 +1,110 @@
 package core.services;
 
+import core.DeviceEvent;
+import core.EventType;
 import core.SmartDevice;
-import core.managers.UserManager;
+import core.Subscription;
+import core.User;
+import core.managers.DeviceManager;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class NotificationService {
-    private final UserManager userManager;
+    // Events delivered right away even while a batch is combining notifications
+    private static final Set<EventType> URGENT_EVENTS = Set.of(EventType.SECURITY_ALERT, EventType.CRITICAL_SECURITY_ALERT);
+
+    // Users by the rooms, devices, event types and severities they want to hear about
+    private final SubscriptionIndex<User> recipients;
+    private final NotificationDelivery delivery;
+    // Holds back repeats of the same warning from the same device
+    private final NotificationThrottle throttle;
+    private final ThreadLocal<NotificationBatch> activeBatch;
+
+    public NotificationService(DeviceManager deviceManager) {
+        this(deviceManager, new NotificationDelivery(2));
+    }
+
+    public NotificationService(DeviceManager deviceManager, NotificationDelivery delivery) {
+        this.recipients = new SubscriptionIndex<>(deviceManager);
+        this.delivery = delivery;
+        this.throttle = new NotificationThrottle(this::deliver, delivery.getScheduler());
+        this.activeBatch = new ThreadLocal<>();
+    }
+
+    // New users hear about everything until given a narrower subscription
+    public void addUser(User user) {
+        recipients.subscribe(user, Subscription.all());
+    }
+
+    // Replaces whatever the user was subscribed to
+    public void setSubscription(User user, Subscription subscription) {
+        recipients.replace(user, subscription);
+    }
 
-    public NotificationService(UserManager userManager) {
-        this.userManager = userManager;
+    // Widens the user's interests; an event matching several subscriptions is delivered once
+    public void addSubscription(User user, Subscription subscription) {
+        recipients.subscribe(user, subscription);
     }
 
     public void broadcastNotification(SmartDevice source, String event, String message) {
-        System.out.println("[NOTIFICATION SERVICE] From " + source.getName() + ": " + event + " - " + message);
-        
-        userManager.getRegisteredUsers().forEach(user -> 
-            user.update(source, event, message)
-        );
+        broadcast(DeviceEvent.withMessage(source, event, message));
+    }
+
+    public void broadcast(DeviceEvent event) {
+        NotificationBatch batch = activeBatch.get();
+        if (batch != null && !URGENT_EVENTS.contains(event.getType())) {
+            batch.add(event.getTypeName());
+            return;
+        }
+        throttle.submit(event);
+    }
+
+    private void deliver(DeviceEvent event) {
+        System.out.println("[NOTIFICATION SERVICE] From " + event.getDeviceName() + ": " + event.getTypeName()
+                + " - " + event.getMessage());
+
+        // Only queues the event for the subscribed users; their channels are called on a delivery worker
+        recipients.dispatch(event, user -> delivery.enqueue(user, event));
+    }
+
+    public NotificationThrottle getThrottle() {
+        return throttle;
+    }
+
+    public NotificationDelivery getDelivery() {
+        return delivery;
+    }
+
+    // Stops notifying the user and delivers what is still queued
+    public void removeUser(User user) {
+        recipients.unsubscribe(user);
+        delivery.remove(user);
+    }
+
+    // Sends the pending repeat summaries, then flushes every user's queue whatever their delivery mode
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        throttle.shutdown();
+        return delivery.shutdown(timeout, unit);
+    }
+
+    // True while the current thread is inside runInBatch
+    public boolean isBatching() {
+        return activeBatch.get() != null;
+    }
+
+    // Runs work on the current thread, collecting its notifications into the batch
+    public void runInBatch(NotificationBatch batch, Runnable work) {
+        NotificationBatch previous = activeBatch.get();
+        activeBatch.set(batch);
+        try {
+            work.run();
+        } finally {
+            if (previous == null) {
+                activeBatch.remove();
+            } else {
+                activeBatch.set(previous);
+            }
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,181 @@
+package core.services;
+
+import core.DeviceEvent;
+import core.EventType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Suppresses repeats of the same event type from the same device. The first event opens a
+// window and goes through; repeats inside the window are only counted. When the window
+// closes a single summary goes out and, if there were repeats, the next window opens right
+// away, so a sustained alarm costs one notification per window instead of one per reading.
+public class NotificationThrottle {
+
+    // Windows by event type; types without one are never throttled
+    private final Map<EventType, Long> windowMillis;
+    // (device id, event type code) -> open window
+    private final Map<Long, Window> openWindows;
+    private final Consumer<DeviceEvent> output;
+    // Shared with the caller (the delivery workers), so the throttle adds no thread of its own
+    private final ScheduledExecutorService timer;
+    private volatile boolean stopped;
+
+    public NotificationThrottle(Consumer<DeviceEvent> output, ScheduledExecutorService timer) {
+        this.windowMillis = new ConcurrentHashMap<>();
+        this.openWindows = new ConcurrentHashMap<>();
+        this.output = output;
+        this.timer = timer;
+    }
+
+    // A window of zero turns suppression off for the type and sends the summaries of its open
+    // windows now
+    public void setWindow(EventType type, long window, TimeUnit unit) {
+        if (window <= 0) {
+            windowMillis.remove(type);
+            for (Window open : openWindows.values()) {
+                if ((int) open.key == type.getCode()) {
+                    open.close(false);
+                }
+            }
+        } else {
+            windowMillis.put(type, unit.toMillis(window));
+        }
+    }
+
+    public long getWindowMillis(EventType type) {
+        Long millis = windowMillis.get(type);
+        return millis == null ? 0 : millis;
+    }
+
+    // Passes the event on unless it repeats one inside an open window
+    public void submit(DeviceEvent event) {
+        Long millis = windowMillis.get(event.getType());
+        if (millis == null) {
+            output.accept(event);
+            return;
+        }
+        long key = ((long) event.getDeviceId() << 32) | event.getType().getCode();
+        while (true) {
+            Window window = openWindows.get(key);
+            if (window == null) {
+                Window opened = new Window(key, millis);
+                if (openWindows.putIfAbsent(key, opened) == null) {
+                    output.accept(event);
+                    opened.start();
+                    return;
+                }
+            } else if (window.suppress(event)) {
+                return;
+            }
+            // Lost a race with a window opening or closing; look again
+        }
+    }
+
+    public int getOpenWindowCount() {
+        return openWindows.size();
+    }
+
+    // Sends the summaries of all open windows now; the timer belongs to the caller and keeps running
+    public void shutdown() {
+        stopped = true;
+        for (Window window : openWindows.values()) {
+            window.close(false);
+        }
+    }
+
+    private final class Window {
+        private final long key;
+        private final long millis;
+        // Guarded by this window
+        private long openedNanos;
+        private int suppressed;
+        private DeviceEvent latest;
+        private boolean closed;
+        private ScheduledFuture<?> closing;
+
+        Window(long key, long millis) {
+            this.key = key;
+            this.millis = millis;
+            this.openedNanos = System.nanoTime();
+        }
+
+        void start() {
+            if (stopped) {
+                close(false);
+                return;
+            }
+            try {
+                ScheduledFuture<?> future = timer.schedule(() -> close(true), millis, TimeUnit.MILLISECONDS);
+                synchronized (this) {
+                    closing = future;
+                }
+            } catch (RejectedExecutionException e) {
+                // Shutting down: nothing is left to suppress
+                close(false);
+            }
+        }
+
+        // False if the window has already closed
+        synchronized boolean suppress(DeviceEvent event) {
+            if (closed) {
+                return false;
+            }
+            suppressed++;
+            latest = event;
+            return true;
+        }
+
+        void close(boolean reopen) {
+            DeviceEvent summary;
+            boolean done;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (suppressed > 0) {
+                    summary = summarize();
+                    if (reopen) {
+                        // Still repeating: keep the same window object for the next period
+                        suppressed = 0;
+                        latest = null;
+                        openedNanos = System.nanoTime();
+                    } else {
+                        closed = true;
+                    }
+                } else {
+                    summary = null;
+                    closed = true;
+                }
+                if (closing != null) {
+                    closing.cancel(false);
+                    closing = null;
+                }
+                done = closed;
+                if (done) {
+                    openWindows.remove(key, this);
+                }
+            }
+            if (summary != null) {
+                output.accept(summary);
+            }
+            if (!done) {
+                start();
+            }
+        }
+
+        // Caller holds the lock
+        private DeviceEvent summarize() {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedNanos);
+            String period = elapsed < 1000 ? elapsed + "ms" : elapsed / 1000 + "s";
+            return DeviceEvent.withMessage(latest.getSource(), latest.getType(),
+                    latest.getMessage() + " (repeated " + suppressed + " more time"
+                            + (suppressed == 1 ? "" : "s") + " in the last " + period + ")");
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package core.services;
+
+import core.Capability;
+import core.DeviceEvent;
+import core.EventType;
+import core.SmartDevice;
+import core.Subscription;
+import core.managers.DeviceManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Subscribers indexed by what they subscribed to. Each subscription is filed under its most
+// selective restriction (device, then event type, room, capability, severity), so dispatching
+// an event only looks at the subscriptions filed under that event's keys plus the unfiltered
+// ones, and subscribers with nothing to do are never visited. Room subscriptions are found
+// under the device's room and each location above it. The room and capabilities of
+// the event's device are only looked up when a candidate subscription needs them. A
+// subscriber with several matching subscriptions still gets the event once.
+public class SubscriptionIndex<T> {
+
+    private static final class Entry<T> {
+        final T subscriber;
+        final Subscription subscription;
+        // Versions of the index the entry was added in and removed in; it is visible to a
+        // dispatch of version v when added <= v < removed
+        final long added;
+        volatile long removed = Long.MAX_VALUE;
+
+        Entry(T subscriber, Subscription subscription, long added) {
+            this.subscriber = subscriber;
+            this.subscription = subscription;
+            this.added = added;
+        }
+
+        boolean needsDevice() {
+            return !subscription.getRooms().isEmpty() || !subscription.getCapabilities().isEmpty();
+        }
+
+        boolean visibleAt(long version) {
+            return added <= version && version < removed;
+        }
+    }
+
+    // Append-only list of entries filed under one key. Appends happen under the index lock and
+    // grow the array by doubling; the count is written last, so an iterator that reads it first
+    // sees that many entries without locking.
+    private static final class PostingList<T> implements Iterable<Entry<T>> {
+        private volatile Object[] items = new Object[4];
+        private volatile int count;
+
+        void add(Entry<T> entry) {
+            Object[] current = items;
+            if (count == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                items = current;
+            }
+            current[count] = entry;
+            count = count + 1;
+        }
+
+        @Override
+        public Iterator<Entry<T>> iterator() {
+            int size = count;
+            Object[] snapshot = items;
+            return new Iterator<Entry<T>>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public Entry<T> next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    return (Entry<T>) snapshot[next++];
+                }
+            };
+        }
+    }
+
+    // Room and capabilities of the registered device an event came from, resolved on demand
+    private final class Target {
+        final DeviceEvent event;
+        // The generation and version being dispatched, so every lookup sees the same subscriptions
+        final Tables<T> tables;
+        final long version;
+        boolean resolved;
+        String room;
+        Set<Capability> capabilities = Collections.emptySet();
+        // Multi-subscription subscribers already served, allocated on first need
+        Set<T> delivered;
+
+        Target(DeviceEvent event, Tables<T> tables) {
+            this.event = event;
+            this.tables = tables;
+            this.version = tables.version;
+        }
+
+        void resolve() {
+            if (resolved) {
+                return;
+            }
+            resolved = true;
+            SmartDevice device = deviceManager.findDeviceById(event.getDeviceId());
+            if (device != null) {
+                room = deviceManager.getDeviceRoom(device);
+                capabilities = deviceManager.getCapabilities(device);
+            }
+        }
+    }
+
+    // One generation of the index. Changes only append to the posting lists they touch and stamp entries with the version they were added or removed in; the
+    // version is published last, so a dispatch sees either the old or the new subscriptions of
+    // a subscriber, never a mix or neither. Removed entries stay in their lists until there
+    // are more of them than live ones, when a fresh generation is built from the live entries.
+    private static final class Tables<T> {
+        final Map<Integer, PostingList<T>> byDevice = new ConcurrentHashMap<>();
+        final Map<EventType, PostingList<T>> byEventType = new ConcurrentHashMap<>();
+        final Map<String, PostingList<T>> byRoom = new ConcurrentHashMap<>();
+        // Filled for every constant up front, so the maps themselves never change
+        final Map<Capability, PostingList<T>> byCapability = new EnumMap<>(Capability.class);
+        final Map<EventType.Severity, PostingList<T>> bySeverity = new EnumMap<>(EventType.Severity.class);
+        final PostingList<T> unfiltered = new PostingList<>();
+        // Entries per subscriber in this generation, removed ones included; subscribers with
+        // more than one are de-duplicated on dispatch
+        final Map<T, Integer> subscriptionCounts = new ConcurrentHashMap<>();
+        volatile long version;
+        volatile int capabilityEntries;
+        int removedEntries;
+
+        Tables(Collection<Entry<T>> entries, long version) {
+            for (Capability capability : Capability.values()) {
+                byCapability.put(capability, new PostingList<>());
+            }
+            for (EventType.Severity severity : EventType.Severity.values()) {
+                bySeverity.put(severity, new PostingList<>());
+            }
+            for (Entry<T> entry : entries) {
+                file(entry);
+            }
+            this.version = version;
+        }
+
+        void file(Entry<T> entry) {
+            subscriptionCounts.merge(entry.subscriber, 1, Integer::sum);
+            Subscription subscription = entry.subscription;
+            if (!subscription.getDeviceIds().isEmpty()) {
+                for (Integer deviceId : subscription.getDeviceIds()) {
+                    byDevice.computeIfAbsent(deviceId, k -> new PostingList<>()).add(entry);
+                }
+            } else if (!subscription.getEventTypes().isEmpty()) {
+                for (EventType type : subscription.getEventTypes()) {
+                    byEventType.computeIfAbsent(type, k -> new PostingList<>()).add(entry);
+                }
+            } else if (!subscription.getRooms().isEmpty()) {
+                for (String room : subscription.getRooms()) {
+                    byRoom.computeIfAbsent(room, k -> new PostingList<>()).add(entry);
+                }
+            } else if (!subscription.getCapabilities().isEmpty()) {
+                for (Capability capability : subscription.getCapabilities()) {
+                    byCapability.get(capability).add(entry);
+                }
+                capabilityEntries++;
+            } else if (subscription.getMinimumSeverity() != EventType.Severity.INFO) {
+                for (EventType.Severity severity : EventType.Severity.values()) {
+                    if (severity.compareTo(subscription.getMinimumSeverity()) >= 0) {
+                        bySeverity.get(severity).add(entry);
+                    }
+                }
+            } else {
+                unfiltered.add(entry);
+            }
+        }
+    }
+
+    private final DeviceManager deviceManager;
+    // Live entries per subscriber, in subscription order; only touched under the lock
+    private final Map<T, List<Entry<T>>> entries;
+    private long version;
+    private volatile int size;
+    private volatile Tables<T> tables;
+
+    public SubscriptionIndex(DeviceManager deviceManager) {
+        this.deviceManager = deviceManager;
+        this.entries = new LinkedHashMap<>();
+        this.tables = new Tables<>(Collections.emptyList(), 0);
+    }
+
+    public synchronized void subscribe(T subscriber, Subscription subscription) {
+        update(subscriber, subscription, false);
+    }
+
+    // Removes every subscription of the subscriber; returns false if it had none
+    public synchronized boolean unsubscribe(T subscriber) {
+        if (!entries.containsKey(subscriber)) {
+            return false;
+        }
+        update(subscriber, null, true);
+        return true;
+    }
+
+    // Swaps all of the subscriber's subscriptions for the given one in a single step
+    public synchronized void replace(T subscriber, Subscription subscription) {
+        update(subscriber, subscription, true);
+    }
+
+    // Applies one change as the next version: only the subscriber's entries and the posting
+    // lists of the added subscription are touched
+    private void update(T subscriber, Subscription added, boolean removeExisting) {
+        long next = version + 1;
+        Tables<T> current = tables;
+        int liveEntries = size;
+        if (removeExisting) {
+            List<Entry<T>> removed = entries.remove(subscriber);
+            if (removed != null) {
+                for (Entry<T> entry : removed) {
+                    entry.removed = next;
+                }
+                current.removedEntries += removed.size();
+                liveEntries -= removed.size();
+            }
+        }
+        if (added != null) {
+            Entry<T> entry = new Entry<>(subscriber, added, next);
+            entries.computeIfAbsent(subscriber, k -> new ArrayList<>()).add(entry);
+            current.file(entry);
+            liveEntries++;
+        }
+        version = next;
+        if (current.removedEntries > liveEntries) {
+            List<Entry<T>> live = new ArrayList<>(liveEntries);
+            entries.values().forEach(live::addAll);
+            tables = new Tables<>(live, next);
+        } else {
+            current.version = next;
+        }
+        size = liveEntries;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Runs the action for every subscriber whose subscription matches the event
+    public void dispatch(DeviceEvent event, Consumer<T> action) {
+        if (size == 0) {
+            return;
+        }
+        Tables<T> current = tables;
+        Target target = new Target(event, current);
+        deliver(current.unfiltered, target, action);
+        deliver(current.byDevice.get(event.getDeviceId()), target, action);
+        deliver(current.byEventType.get(event.getType()), target, action);
+        deliver(current.bySeverity.get(event.getType().getSeverity()), target, action);
+        if (!current.byRoom.isEmpty()) {
+            target.resolve();
+            for (String path = target.room; path != null; path = Subscription.parentOf(path)) {
+                PostingList<T> filed = current.byRoom.get(path);
+                if (filed == null) {
+                    continue;
+                }
+                for (Entry<T> entry : filed) {
+                    // Filed under each of its locations: deliver once, from the deepest matching one
+                    if (entry.visibleAt(target.version)
+                            && path.equals(entry.subscription.matchingRoom(target.room))
+                            && entry.subscription.matches(event, target.room, target.capabilities)) {
+                        accept(entry, target, action);
+                    }
+                }
+            }
+        }
+        if (current.capabilityEntries > 0) {
+            target.resolve();
+            for (Capability capability : target.capabilities) {
+                PostingList<T> filed = current.byCapability.get(capability);
+                if (filed == null) {
+                    continue;
+                }
+                for (Entry<T> entry : filed) {
+                    // Filed under each of its capabilities: deliver once, from the first shared one
+                    if (entry.visibleAt(target.version)
+                            && firstShared(entry.subscription.getCapabilities(), target.capabilities) == capability
+                            && entry.subscription.matches(event, target.room, target.capabilities)) {
+                        accept(entry, target, action);
+                    }
+                }
+            }
+        }
+    }
+
+    private void deliver(PostingList<T> entries, Target target, Consumer<T> action) {
+        if (entries == null) {
+            return;
+        }
+        for (Entry<T> entry : entries) {
+            if (!entry.visibleAt(target.version)) {
+                continue;
+            }
+            if (entry.needsDevice()) {
+                target.resolve();
+            }
+            if (entry.subscription.matches(target.event, target.room, target.capabilities)) {
+                accept(entry, target, action);
+            }
+        }
+    }
+
+    private void accept(Entry<T> entry, Target target, Consumer<T> action) {
+        if (target.tables.subscriptionCounts.getOrDefault(entry.subscriber, 1) > 1) {
+            if (target.delivered == null) {
+                target.delivered = new HashSet<>();
+            }
+            if (!target.delivered.add(entry.subscriber)) {
+                return;
+            }
+        }
+        action.accept(entry.subscriber);
+    }
+
+    private static Capability firstShared(Set<Capability> subscribed, Set<Capability> provided) {
+        for (Capability capability : provided) {
+            if (subscribed.contains(capability)) {
+                return capability;
+            }
+        }
+        return null;
+    }
+}
@@ -1,9 +1,16 @@
 package decorators;
 
+import core.Capability;
+import core.DeviceCommand;
+import core.DeviceComponent;
+import core.DeviceEvent;
 import core.DeviceObserver;
 import core.DeviceStatus;
+import core.EventSink;
 import core.SmartDevice;
 
+import java.util.function.Supplier;
+
 public abstract class DeviceDecorator implements SmartDevice {
 
     protected SmartDevice decoratedDevice;
@@ -17,6 +24,11 @@ public abstract class DeviceDecorator implements SmartDevice {
         return decoratedDevice.getName();
     }
 
+    @Override
+    public int getId() {
+        return decoratedDevice.getId();
+    }
+
     @Override
     public void turnOn() {
         decoratedDevice.turnOn();
@@ -33,8 +45,8 @@ public abstract class DeviceDecorator implements SmartDevice {
     }
 
     @Override
-    public void executeAction(String action, String[] params) {
-        decoratedDevice.executeAction(action, params);
+    public void execute(DeviceCommand command) {
+        decoratedDevice.execute(command);
     }
 
     @Override
@@ -48,8 +60,13 @@ public abstract class DeviceDecorator implements SmartDevice {
     }
 
     @Override
-    public void notifyObservers(String event, String message) {
-        decoratedDevice.notifyObservers(event, message);
+    public void notifyObservers(DeviceEvent event) {
+        decoratedDevice.notifyObservers(event);
+    }
+
+    @Override
+    public void notifyLocalObservers(DeviceEvent event) {
+        decoratedDevice.notifyLocalObservers(event);
     }
 
     @Override
@@ -57,6 +74,43 @@ public abstract class DeviceDecorator implements SmartDevice {
         return decoratedDevice.getStatus();
     }
 
+    @Override
+    public void setEventSink(EventSink eventSink) {
+        decoratedDevice.setEventSink(eventSink);
+    }
+
+    @Override
+    public EventSink getEventSink() {
+        return decoratedDevice.getEventSink();
+    }
+
+    // Components are attached to the innermost device, whichever layer they were attached through
+    @Override
+    public <T extends DeviceComponent> T attach(T component) {
+        return decoratedDevice.attach(component);
+    }
+
+    @Override
+    public DeviceComponent getComponent(Capability capability) {
+        return decoratedDevice.getComponent(capability);
+    }
+
+    // Wrapping a device that already has a component of this type, e.g. decorating it twice,
+    // reuses that component instead of failing on a second attach
+    protected <T extends DeviceComponent> T attachShared(Capability capability, Class<T> type,
+                                                         Supplier<T> factory) {
+        DeviceComponent existing = decoratedDevice.getComponent(capability);
+        if (type.isInstance(existing)) {
+            return type.cast(existing);
+        }
+        return decoratedDevice.attach(factory.get());
+    }
+
+    @Override
+    public SmartDevice getDecoratedDevice() {
+        return decoratedDevice;
+    }
+
     // Method to detach and return the original device
     public SmartDevice detach() {
         return decoratedDevice;
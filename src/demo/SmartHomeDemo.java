@@ -3,7 +3,7 @@ package demo;
 
 import core.*;
 import devices.*;
-import decorators.*;
+import devices.components.*;
 import strategies.*;
 import observers.*;
 
@@ -11,6 +11,7 @@ import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 public class SmartHomeDemo {
 
@@ -35,6 +36,10 @@ public class SmartHomeDemo {
         hub.registerUser(alice);
         hub.registerUser(bob);
 
+        // Sustained sensor warnings are summarized once a minute instead of sent per reading
+        hub.setSuppressionWindow(EventType.TEMPERATURE_WARNING, 1, TimeUnit.MINUTES);
+        hub.setSuppressionWindow(EventType.HUMIDITY_WARNING, 1, TimeUnit.MINUTES);
+
         // Create and register devices
         Light livingRoomLight = new Light("Living Room Light");
         livingRoomLight.addObserver(loggingObserver);
@@ -43,19 +48,30 @@ public class SmartHomeDemo {
 
         AirConditioner livingRoomAC = new AirConditioner("Living Room AC");
         livingRoomAC.addObserver(loggingObserver);
-        SmartDevice livingRoomACWithTemp = new TemperatureSensorDecorator(livingRoomAC);
-        hub.registerDevice(livingRoomACWithTemp, "Living Room");
+        livingRoomAC.attach(new TemperatureSensor());
+        hub.registerDevice(livingRoomAC, "Living Room");
 
         Fan kitchenFan = new Fan("Kitchen Fan");
         kitchenFan.addObserver(loggingObserver);
-        SmartDevice kitchenFanWithHumidity = new HumiditySensorDecorator(kitchenFan);
-        hub.registerDevice(kitchenFanWithHumidity, "Kitchen");
+        kitchenFan.attach(new HumiditySensor());
+        hub.registerDevice(kitchenFan, "Kitchen");
 
         SmartCamera entryCamera = new SmartCamera("Entry Camera");
         entryCamera.addObserver(loggingObserver);
         entryCamera.addObserver(securityObserver);
-        SmartDevice entryCameraWithMotion = new MotionSensorDecorator(entryCamera);
-        hub.registerDevice(entryCameraWithMotion, "Entry Hall");
+        entryCamera.attach(new MotionSensor());
+        hub.registerDevice(entryCamera, "Entry Hall");
+
+        // Temporal security rules, evaluated as events arrive
+        securityObserver.addRule(SecurityRule.sequence("Entry then lights",
+                EventPattern.of(EventType.MOTION_DETECTED).fromDevices("Entry Camera")
+                        .when(e -> e.getSource() instanceof SmartCamera
+                                && "AWAY".equals(((SmartCamera) e.getSource()).getMode())),
+                EventPattern.of(EventType.STATE_CHANGED, EventType.BRIGHTNESS_CHANGED, EventType.COLOR_CHANGED)
+                        .fromDevices("Living Room Light"),
+                30, TimeUnit.SECONDS));
+        securityObserver.addRule(SecurityRule.threshold("Repeated motion",
+                EventPattern.of(EventType.MOTION_DETECTED), 5, 1, TimeUnit.MINUTES));
 
         // Apply control strategies
         livingRoomAC.setControlStrategy(new TemperatureBasedControlStrategy(26, true));
@@ -108,6 +124,8 @@ public class SmartHomeDemo {
             }
         }
         scanner.close();
+        hub.shutdown();
+        loggingObserver.close();
     }
 
     private void showAllDevices() {
@@ -138,16 +156,7 @@ public class SmartHomeDemo {
         System.out.print("\nEnter device name to control: ");
         String deviceName = scanner.nextLine();
 
-        SmartHomeHub.DeviceIterator iterator = hub.getDeviceIterator();
-        SmartDevice targetDevice = null;
-
-        while (iterator.hasNext()) {
-            SmartDevice device = iterator.next();
-            if (device.getName().equalsIgnoreCase(deviceName)) {
-                targetDevice = device;
-                break;
-            }
-        }
+        SmartDevice targetDevice = hub.findDeviceIgnoreCase(deviceName);
 
         if (targetDevice == null) {
             System.out.println("Device not found.");
@@ -192,30 +201,28 @@ public class SmartHomeDemo {
 
     private void simulateEvents() {
         System.out.println("\nSimulating Events...");
-        SmartHomeHub.DeviceIterator iterator = hub.getDeviceIterator();
 
-        while (iterator.hasNext()) {
-            SmartDevice device = iterator.next();
-            if (device instanceof TemperatureSensorDecorator) {
-                if(device.getStatus().isOn()) {
-                    ((TemperatureSensorDecorator) device).readTemperature();
-                }
-            } else if (device instanceof HumiditySensorDecorator) {
-                if (device.getStatus().isOn()) {
-                    ((HumiditySensorDecorator) device).readHumidity();
-                }
-            } else if (device instanceof MotionSensorDecorator) {
-                if(device.getStatus().isOn()) {
-                    // Random motion detection
-                    boolean motionDetected = Math.random() > 0.5; // 50% chance of motion detection
-                    ((MotionSensorDecorator) device).simulateMotion(motionDetected);
-
-                    // Create log
-                    SmartDevice innerDevice = ((MotionSensorDecorator) device).getDecoratedDevice();
-                    String deviceName = innerDevice.getName();
-                    System.out.println(deviceName + " - Motion status: " +
-                            (motionDetected ? "Motion Detected" : "No Motion"));
-                }
+        for (TemperatureSensor sensor : hub.findCapability(Capability.TEMPERATURE_SENSOR, TemperatureSensor.class)) {
+            if (sensor.getDevice().getStatus().isOn()) {
+                sensor.readTemperature();
+            }
+        }
+
+        for (HumiditySensor sensor : hub.findCapability(Capability.HUMIDITY_SENSOR, HumiditySensor.class)) {
+            if (sensor.getDevice().getStatus().isOn()) {
+                sensor.readHumidity();
+            }
+        }
+
+        for (MotionSensor sensor : hub.findCapability(Capability.MOTION_SENSOR, MotionSensor.class)) {
+            if (sensor.getDevice().getStatus().isOn()) {
+                // Random motion detection
+                boolean motionDetected = Math.random() > 0.5; // 50% chance of motion detection
+                sensor.simulateMotion(motionDetected);
+
+                // Create log
+                System.out.println(sensor.getDevice().getName() + " - Motion status: " +
+                        (motionDetected ? "Motion Detected" : "No Motion"));
             }
         }
 
@@ -254,25 +261,10 @@ public class SmartHomeDemo {
     // Change modes for all cameras
     private void changeAllCameraModes(String newMode) {
         int changedCount = 0;
-        SmartHomeHub.DeviceIterator iterator = hub.getDeviceIterator();
-
-        while (iterator.hasNext()) {
-            SmartDevice device = iterator.next();
-            SmartCamera camera = null;
-
-            if (device instanceof SmartCamera) {
-                camera = (SmartCamera) device;
-            } else if (device instanceof MotionSensorDecorator) {
-                SmartDevice decoratedDevice = ((MotionSensorDecorator) device).getDecoratedDevice();
-                if (decoratedDevice instanceof SmartCamera) {
-                    camera = (SmartCamera) decoratedDevice;
-                }
-            }
 
-            if (camera != null) {
-                camera.setMode(newMode);
-                changedCount++;
-            }
+        for (SmartCamera camera : hub.findCapability(Capability.CAMERA, SmartCamera.class)) {
+            camera.setMode(newMode);
+            changedCount++;
         }
 
         if (changedCount > 0) {
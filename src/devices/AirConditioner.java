@@ -1,5 +1,9 @@
 package devices;
 
+import core.CommandType;
+import core.DeviceEvent;
+import core.EventType;
+
 public class AirConditioner extends BaseSmartDevice {
 
     private int temperature;
@@ -15,13 +19,37 @@ public class AirConditioner extends BaseSmartDevice {
         status.setAttribute("temperature", String.valueOf(temperature));
         status.setAttribute("mode", mode);
         status.setAttribute("fanSpeed", String.valueOf(fanSpeed));
+
+        registerHandler(CommandType.SET_TEMP, command -> {
+            if (command.hasArguments()) {
+                if (command.isValid()) {
+                    setTemperature(command.getIntValue());
+                } else {
+                    System.out.println("Invalid temperature parameter");
+                }
+            }
+        });
+        registerHandler(CommandType.SET_MODE, command -> {
+            if (command.hasArguments()) {
+                setMode(command.getTextValue());
+            }
+        });
+        registerHandler(CommandType.SET_FAN, command -> {
+            if (command.hasArguments()) {
+                if (command.isValid()) {
+                    setFanSpeed(command.getIntValue());
+                } else {
+                    System.out.println("Invalid fan speed parameter");
+                }
+            }
+        });
     }
 
     public void setTemperature(int temperature) {
         if (temperature >= 16 && temperature <= 30) {
             this.temperature = temperature;
             status.setAttribute("temperature", String.valueOf(temperature));
-            notifyObservers("TEMPERATURE_CHANGED", "Temperature set to " + temperature + "°C");
+            notifyObservers(DeviceEvent.of(this, EventType.TEMPERATURE_CHANGED, temperature));
         }
     }
 
@@ -33,7 +61,7 @@ public class AirConditioner extends BaseSmartDevice {
         if (mode.equals("COOL") || mode.equals("HEAT") || mode.equals("FAN")) {
             this.mode = mode;
             status.setAttribute("mode", mode);
-            notifyObservers("MODE_CHANGED", "Mode set to " + mode);
+            notifyObservers(DeviceEvent.of(this, EventType.MODE_CHANGED, mode));
         }
     }
 
@@ -45,43 +73,11 @@ public class AirConditioner extends BaseSmartDevice {
         if (fanSpeed >= 1 && fanSpeed <= 5) {
             this.fanSpeed = fanSpeed;
             status.setAttribute("fanSpeed", String.valueOf(fanSpeed));
-            notifyObservers("FAN_SPEED_CHANGED", "Fan speed set to " + fanSpeed);
+            notifyObservers(DeviceEvent.of(this, EventType.FAN_SPEED_CHANGED, fanSpeed));
         }
     }
 
     public int getFanSpeed() {
         return fanSpeed;
     }
-
-    @Override
-    public void executeAction(String action, String[] params) {
-        switch (action) {
-            case "SET_TEMP":
-                if (params != null && params.length > 0) {
-                    try {
-                        setTemperature(Integer.parseInt(params[0]));
-                    } catch (NumberFormatException e) {
-                        System.out.println("Invalid temperature parameter");
-                    }
-                }
-                break;
-            case "SET_MODE":
-                if (params != null && params.length > 0) {
-                    setMode(params[0]);
-                }
-                break;
-            case "SET_FAN":
-                if (params != null && params.length > 0) {
-                    try {
-                        setFanSpeed(Integer.parseInt(params[0]));
-                    } catch (NumberFormatException e) {
-                        System.out.println("Invalid fan speed parameter");
-                    }
-                }
-                break;
-            default:
-                super.executeAction(action, params);
-                break;
-        }
-    }
 }
@@ -1,29 +1,54 @@
 package devices;
 
+import core.Capability;
+import core.CommandHandler;
+import core.CommandType;
+import core.DeviceCommand;
+import core.DeviceComponent;
+import core.DeviceEvent;
 import core.DeviceObserver;
 import core.DeviceStatus;
+import core.EventSink;
+import core.EventType;
 import core.SmartDevice;
-import core.SmartHomeHub;
 import strategies.ManualControlStrategy;
 import core.ControlStrategy;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public abstract class BaseSmartDevice implements SmartDevice {
 
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    protected final int id;
     protected String name;
     protected boolean isOn;
     protected DeviceStatus status;
     protected List<DeviceObserver> observers;
     protected ControlStrategy controlStrategy;
+    protected volatile EventSink eventSink;
+    // Dispatch table indexed by CommandType ordinal; commands without a handler go to the strategy.
+    // Both tables are atomic arrays so a component attached after the device is shared with
+    // other threads is seen by them without taking the device's lock on every command.
+    private final AtomicReferenceArray<CommandHandler> handlers;
+    // Attached components indexed by Capability ordinal
+    private final AtomicReferenceArray<DeviceComponent> components;
 
     public BaseSmartDevice(String name) {
+        this.id = NEXT_ID.getAndIncrement();
         this.name = name;
         this.isOn = true;
         this.status = new DeviceStatus(false);
-        this.observers = new ArrayList<>();
+        // Copy-on-write: observers may be notified from the event bus thread while others are added
+        this.observers = new CopyOnWriteArrayList<>();
         this.controlStrategy = new ManualControlStrategy(); // Default strategy
+        this.eventSink = EventSink.NONE; // Bound when registered with a hub
+        this.handlers = new AtomicReferenceArray<>(CommandType.COUNT);
+        this.components = new AtomicReferenceArray<>(Capability.values().length);
     }
 
     @Override
@@ -31,12 +56,17 @@ public abstract class BaseSmartDevice implements SmartDevice {
         return name;
     }
 
+    @Override
+    public int getId() {
+        return id;
+    }
+
     @Override
     public void turnOn() {
         if (!isOn) {
             isOn = true;
             status.setOn(true);
-            notifyObservers("STATE_CHANGED", "Device turned ON");
+            notifyObservers(DeviceEvent.of(this, EventType.STATE_CHANGED, true));
         }
     }
 
@@ -45,7 +75,7 @@ public abstract class BaseSmartDevice implements SmartDevice {
         if (isOn) {
             isOn = false;
             status.setOn(false);
-            notifyObservers("STATE_CHANGED", "Device turned OFF");
+            notifyObservers(DeviceEvent.of(this, EventType.STATE_CHANGED, false));
         }
     }
 
@@ -55,8 +85,40 @@ public abstract class BaseSmartDevice implements SmartDevice {
     }
 
     @Override
-    public void executeAction(String action, String[] params) {
-        controlStrategy.control(this, params);
+    public void execute(DeviceCommand command) {
+        CommandHandler handler = handlers.get(command.getType().ordinal());
+        if (handler != null) {
+            handler.handle(command);
+        } else {
+            controlStrategy.control(this, command.getParams());
+        }
+    }
+
+    protected void registerHandler(CommandType type, CommandHandler handler) {
+        handlers.set(type.ordinal(), handler);
+    }
+
+    @Override
+    public <T extends DeviceComponent> T attach(T component) {
+        synchronized (this) {
+            int slot = component.getCapability().ordinal();
+            if (components.get(slot) != null) {
+                throw new IllegalStateException(name + " already has a " + component.getCapability() + " component");
+            }
+            for (Map.Entry<CommandType, CommandHandler> entry : component.attach(this).entrySet()) {
+                registerHandler(entry.getKey(), entry.getValue());
+            }
+            // Published last, so a thread that finds the component also finds its handlers
+            components.set(slot, component);
+        }
+        // Outside the lock: the hub takes its own locks to index the new capability
+        eventSink.componentAttached(this, component);
+        return component;
+    }
+
+    @Override
+    public DeviceComponent getComponent(Capability capability) {
+        return components.get(capability.ordinal());
     }
 
     public void setControlStrategy(ControlStrategy strategy) {
@@ -77,13 +139,37 @@ public abstract class BaseSmartDevice implements SmartDevice {
     }
 
     @Override
-    public void notifyObservers(String event, String message) {
+    public void notifyObservers(DeviceEvent event) {
+        // With the hub's event bus running, observers and users are notified on its threads
+        EventSink sink = eventSink;
+        if (sink.publish(event)) {
+            return;
+        }
+
+        // Observers may change devices in turn; the cascade bounds how far that goes
+        sink.getCascade().deliver(event, () -> {
+            notifyLocalObservers(event);
+
+            // Also notify the hub this device is registered with for system-wide notifications
+            sink.broadcast(event);
+        });
+    }
+
+    @Override
+    public void notifyLocalObservers(DeviceEvent event) {
         for (DeviceObserver observer : observers) {
-            observer.update(this, event, message);
+            observer.onEvent(event);
         }
+    }
+
+    @Override
+    public void setEventSink(EventSink eventSink) {
+        this.eventSink = eventSink == null ? EventSink.NONE : eventSink;
+    }
 
-        // Also notify the hub for system-wide notifications
-        SmartHomeHub.getInstance().broadcastNotification(this, event, message);
+    @Override
+    public EventSink getEventSink() {
+        return eventSink;
     }
 
     @Override
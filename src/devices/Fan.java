@@ -1,5 +1,9 @@
 package devices;
 
+import core.CommandType;
+import core.DeviceEvent;
+import core.EventType;
+
 public class Fan extends BaseSmartDevice {
 
     private int speed;
@@ -12,6 +16,21 @@ public class Fan extends BaseSmartDevice {
 
         status.setAttribute("speed", String.valueOf(speed));
         status.setAttribute("oscillating", String.valueOf(oscillating));
+
+        registerHandler(CommandType.SET_SPEED, command -> {
+            if (command.hasArguments()) {
+                if (command.isValid()) {
+                    setSpeed(command.getIntValue());
+                } else {
+                    System.out.println("Invalid speed parameter");
+                }
+            }
+        });
+        registerHandler(CommandType.SET_OSCILLATE, command -> {
+            if (command.hasArguments()) {
+                setOscillating(command.getBooleanValue());
+            }
+        });
     }
 
     public void setSpeed(int speed) {
@@ -25,7 +44,7 @@ public class Fan extends BaseSmartDevice {
                 turnOn();
             }
 
-            notifyObservers("SPEED_CHANGED", "Fan speed set to " + speed);
+            notifyObservers(DeviceEvent.of(this, EventType.SPEED_CHANGED, speed));
         }
     }
 
@@ -36,34 +55,10 @@ public class Fan extends BaseSmartDevice {
     public void setOscillating(boolean oscillating) {
         this.oscillating = oscillating;
         status.setAttribute("oscillating", String.valueOf(oscillating));
-        notifyObservers("OSCILLATION_CHANGED", "Oscillation " + (oscillating ? "enabled" : "disabled"));
+        notifyObservers(DeviceEvent.of(this, EventType.OSCILLATION_CHANGED, oscillating));
     }
 
     public boolean isOscillating() {
         return oscillating;
     }
-
-    @Override
-    public void executeAction(String action, String[] params) {
-        switch (action) {
-            case "SET_SPEED":
-                if (params != null && params.length > 0) {
-                    try {
-                        setSpeed(Integer.parseInt(params[0]));
-                    } catch (NumberFormatException e) {
-                        System.out.println("Invalid speed parameter");
-                    }
-                }
-                break;
-            case "SET_OSCILLATE":
-                if (params != null && params.length > 0) {
-                    setOscillating(Boolean.parseBoolean(params[0]));
-                }
-                break;
-            default:
-                super.executeAction(action, params);
-                break;
-        }
-    }
 }
-
@@ -1,7 +1,16 @@
 package devices;
 
+import core.Capability;
+import core.CommandType;
+import core.DeviceEvent;
+import core.EventType;
+
+import java.util.Set;
+
 public class Light extends BaseSmartDevice {
 
+    private static final Set<Capability> CAPABILITIES = Set.of(Capability.DIMMABLE);
+
     private int brightness;
     private String color;
 
@@ -11,13 +20,28 @@ public class Light extends BaseSmartDevice {
         this.color = "White"; // Default color
         status.setAttribute("brightness", String.valueOf(brightness));
         status.setAttribute("color", color);
+
+        registerHandler(CommandType.DIM, command -> {
+            if (command.hasArguments()) {
+                if (command.isValid()) {
+                    setBrightness(command.getIntValue());
+                } else {
+                    System.out.println("Invalid brightness parameter");
+                }
+            }
+        });
+        registerHandler(CommandType.COLOR, command -> {
+            if (command.hasArguments()) {
+                setColor(command.getTextValue());
+            }
+        });
     }
 
     public void setBrightness(int brightness) {
         if (brightness >= 0 && brightness <= 100) {
             this.brightness = brightness;
             status.setAttribute("brightness", String.valueOf(brightness));
-            notifyObservers("BRIGHTNESS_CHANGED", "Brightness set to " + brightness + "%");
+            notifyObservers(DeviceEvent.of(this, EventType.BRIGHTNESS_CHANGED, brightness));
         }
     }
 
@@ -28,7 +52,7 @@ public class Light extends BaseSmartDevice {
     public void setColor(String color) {
         this.color = color;
         status.setAttribute("color", color);
-        notifyObservers("COLOR_CHANGED", "Color set to " + color);
+        notifyObservers(DeviceEvent.of(this, EventType.COLOR_CHANGED, color));
     }
 
     public String getColor() {
@@ -36,26 +60,7 @@ public class Light extends BaseSmartDevice {
     }
 
     @Override
-    public void executeAction(String action, String[] params) {
-        switch (action) {
-            case "DIM":
-                if (params != null && params.length > 0) {
-                    try {
-                        setBrightness(Integer.parseInt(params[0]));
-                    } catch (NumberFormatException e) {
-                        System.out.println("Invalid brightness parameter");
-                    }
-                }
-                break;
-            case "COLOR":
-                if (params != null && params.length > 0) {
-                    setColor(params[0]);
-                }
-                break;
-            default:
-                super.executeAction(action, params);
-                break;
-        }
+    public Set<Capability> getCapabilities() {
+        return CAPABILITIES;
     }
 }
-
@@ -1,9 +1,17 @@
 package devices;
 
-import core.SmartHomeHub;
+import core.Capability;
+import core.CommandType;
+import core.DeviceEvent;
+import core.EventType;
+
+import java.util.Set;
 
 public class SmartCamera extends BaseSmartDevice {
 
+    private static final Set<Capability> CAPABILITIES = Set.of(Capability.CAMERA);
+    private static final EventType.Renderer MODE_MESSAGE = event -> "Camera mode set to " + event.getText();
+
     private String mode; // NORMAL, AWAY, PET
     private boolean motionDetected;
     private boolean recordingActive;
@@ -17,13 +25,27 @@ public class SmartCamera extends BaseSmartDevice {
         status.setAttribute("mode", mode);
         status.setAttribute("motionDetected", String.valueOf(motionDetected));
         status.setAttribute("recordingActive", String.valueOf(recordingActive));
+
+        registerHandler(CommandType.SET_MODE, command -> {
+            if (command.hasArguments()) {
+                setMode(command.getTextValue());
+            }
+        });
+        registerHandler(CommandType.SIMULATE_MOTION, command -> {
+            if (command.hasArguments()) {
+                detectMotion(command.getBooleanValue());
+            }
+        });
+        registerHandler(CommandType.TAKE_PHOTO, command -> takePhoto());
+        registerHandler(CommandType.START_RECORDING, command -> startRecording());
+        registerHandler(CommandType.STOP_RECORDING, command -> stopRecording());
     }
 
     public void setMode(String mode) {
         if (mode.equals("NORMAL") || mode.equals("AWAY") || mode.equals("PET")) {
             this.mode = mode;
             status.setAttribute("mode", mode);
-            notifyObservers("MODE_CHANGED", "Camera mode set to " + mode);
+            notifyObservers(DeviceEvent.of(this, EventType.MODE_CHANGED, mode, MODE_MESSAGE));
         }
     }
 
@@ -42,11 +64,11 @@ public class SmartCamera extends BaseSmartDevice {
                 // In AWAY mode, we take a photo and notify users through the hub
                 takePhoto();
                 startRecording();
-                notifyObservers("SECURITY_ALERT", "Motion detected while in AWAY mode!");
+                notifyObservers(DeviceEvent.withMessage(this, EventType.SECURITY_ALERT, "Motion detected while in AWAY mode!"));
             } else if (mode.equals("PET")) {
                 // In PET mode, we only take a photo
                 takePhoto();
-                notifyObservers("PET_ACTIVITY", "Pet activity detected");
+                notifyObservers(DeviceEvent.withMessage(this, EventType.PET_ACTIVITY, "Pet activity detected"));
             }
         } else {
             System.out.println(name + ": No motion detected");
@@ -79,30 +101,7 @@ public class SmartCamera extends BaseSmartDevice {
     }
 
     @Override
-    public void executeAction(String action, String[] params) {
-        switch (action) {
-            case "SET_MODE":
-                if (params != null && params.length > 0) {
-                    setMode(params[0]);
-                }
-                break;
-            case "SIMULATE_MOTION":
-                if (params != null && params.length > 0) {
-                    detectMotion(Boolean.parseBoolean(params[0]));
-                }
-                break;
-            case "TAKE_PHOTO":
-                takePhoto();
-                break;
-            case "START_RECORDING":
-                startRecording();
-                break;
-            case "STOP_RECORDING":
-                stopRecording();
-                break;
-            default:
-                super.executeAction(action, params);
-                break;
-        }
+    public Set<Capability> getCapabilities() {
+        return CAPABILITIES;
     }
 }
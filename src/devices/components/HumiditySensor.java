@@ -0,0 +1,110 @@
+package devices.components;
+
+import core.Capability;
+import core.CommandHandler;
+import core.CommandType;
+import core.DeviceEvent;
+import core.EventType;
+
+import java.util.Map;
+import java.util.Random;
+
+public class HumiditySensor extends SensorComponent {
+
+    private double currentHumidity;
+    private double warningThresholdHigh;
+    private double warningThresholdLow;
+    private Random random;
+
+    public HumiditySensor() {
+        this.random = new Random();
+        this.currentHumidity = 50.0; // Default starting humidity (%)
+        this.warningThresholdHigh = 70.0; // Default high warning threshold
+        this.warningThresholdLow = 30.0; // Default low warning threshold
+    }
+
+    @Override
+    public Capability getCapability() {
+        return Capability.HUMIDITY_SENSOR;
+    }
+
+    @Override
+    protected void onAttach(Map<CommandType, CommandHandler> handlers) {
+        // Add humidity to status
+        device.getStatus().setAttribute("humiditySensor", String.valueOf(currentHumidity));
+        device.getStatus().setAttribute("humidityWarningThresholdHigh", String.valueOf(warningThresholdHigh));
+        device.getStatus().setAttribute("humidityWarningThresholdLow", String.valueOf(warningThresholdLow));
+
+        handlers.put(CommandType.READ_HUMIDITY, command -> readHumidity());
+        handlers.put(CommandType.SET_HUMIDITY, command -> {
+            if (command.hasArguments()) {
+                if (command.isValid()) {
+                    setHumidity(command.getDoubleValue());
+                } else {
+                    System.out.println("Invalid humidity parameter");
+                }
+            }
+        });
+        handlers.put(CommandType.SET_HUMIDITY_THRESHOLDS, command -> {
+            if (command.hasArguments()) {
+                if (command.isValid()) {
+                    setWarningThresholds(command.getDoubleValue(), command.getSecondDoubleValue());
+                } else {
+                    System.out.println("Invalid threshold parameters");
+                }
+            }
+        });
+    }
+
+    public double getCurrentHumidity() {
+        return currentHumidity;
+    }
+
+    public void setWarningThresholds(double lowThreshold, double highThreshold) {
+        this.warningThresholdLow = lowThreshold;
+        this.warningThresholdHigh = highThreshold;
+
+        device.getStatus().setAttribute("humidityWarningThresholdLow", String.valueOf(warningThresholdLow));
+        device.getStatus().setAttribute("humidityWarningThresholdHigh", String.valueOf(warningThresholdHigh));
+    }
+
+    // Simulate a humidity reading
+    public void readHumidity() {
+        // Simulate a humidity reading with small random changes
+        double change = (random.nextDouble() - 0.5) * 4.0; // Change between -2 and +2
+        currentHumidity += change;
+
+        // Keep humidity between 0 and 100
+        currentHumidity = Math.max(0, Math.min(100, currentHumidity));
+        currentHumidity = Math.round(currentHumidity * 10.0) / 10.0; // Round to 1 decimal place
+
+        device.getStatus().setAttribute("humiditySensor", String.valueOf(currentHumidity));
+
+        System.out.println(device.getName() + " humidity sensor reading: " + currentHumidity + "%");
+
+        checkThresholds();
+    }
+
+    // Simulate a specific humidity for testing
+    public void setHumidity(double humidity) {
+        if (humidity >= 0 && humidity <= 100) {
+            this.currentHumidity = humidity;
+            device.getStatus().setAttribute("humiditySensor", String.valueOf(currentHumidity));
+
+            System.out.println(device.getName() + " humidity set to: " + currentHumidity + "%");
+
+            checkThresholds();
+        }
+    }
+
+    // Check if humidity is outside warning thresholds
+    private void checkThresholds() {
+        if (currentHumidity > warningThresholdHigh) {
+            device.notifyObservers(DeviceEvent.of(device, EventType.HUMIDITY_WARNING,
+                    currentHumidity, warningThresholdHigh));
+        } else if (currentHumidity < warningThresholdLow) {
+            device.notifyObservers(DeviceEvent.of(device, EventType.HUMIDITY_WARNING,
+                    currentHumidity, warningThresholdLow));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package devices.components;
+
+import core.Capability;
+import core.CommandHandler;
+import core.CommandType;
+import core.DeviceEvent;
+import core.EventHistory;
+import core.EventType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class MotionSensor extends SensorComponent {
+
+    private boolean motionDetected;
+    private int sensitivityLevel; // 1-5, where 5 is most sensitive
+    private EventHistory motionEvents;
+    private Random random;
+
+    public MotionSensor() {
+        this.motionDetected = false;
+        this.sensitivityLevel = 3; // Default medium sensitivity
+        this.motionEvents = new EventHistory(20); // Keep only the last 20 events
+        this.random = new Random();
+    }
+
+    @Override
+    public Capability getCapability() {
+        return Capability.MOTION_SENSOR;
+    }
+
+    // SIMULATE_MOTION replaces a camera's own handler, as the motion sensor decorator did
+    @Override
+    protected void onAttach(Map<CommandType, CommandHandler> handlers) {
+        // Add motion sensor data to status
+        device.getStatus().setAttribute("motionSensor", String.valueOf(motionDetected));
+        device.getStatus().setAttribute("motionSensitivity", String.valueOf(sensitivityLevel));
+        device.getStatus().setAttribute("motionEventsCount", String.valueOf(motionEvents.size()));
+
+        handlers.put(CommandType.DETECT_MOTION, command -> detectMotion());
+        handlers.put(CommandType.SIMULATE_MOTION, command -> {
+            if (command.hasArguments()) {
+                simulateMotion(command.getBooleanValue());
+            }
+        });
+        handlers.put(CommandType.SET_SENSITIVITY, command -> {
+            if (command.hasArguments()) {
+                if (command.isValid()) {
+                    setSensitivityLevel(command.getIntValue());
+                } else {
+                    System.out.println("Invalid sensitivity parameter");
+                }
+            }
+        });
+        handlers.put(CommandType.GET_MOTION_EVENTS, command -> {
+            System.out.println("\nMotion events for " + device.getName() + ":");
+            for (String event : getMotionEvents()) {
+                System.out.println("  " + event);
+            }
+        });
+    }
+
+    public boolean isMotionDetected() {
+        return motionDetected;
+    }
+
+    public void setSensitivityLevel(int level) {
+        if (level >= 1 && level <= 5) {
+            this.sensitivityLevel = level;
+            device.getStatus().setAttribute("motionSensitivity", String.valueOf(sensitivityLevel));
+            System.out.println(device.getName() + " motion sensor sensitivity set to " + level);
+        }
+    }
+
+    public void detectMotion() {
+        // Simulate motion detection based on sensitivity
+        int detectionThreshold = 6 - sensitivityLevel; // Invert so higher sensitivity means lower threshold
+        boolean detected = random.nextInt(10) >= detectionThreshold;
+
+        if (detected) {
+            if (!motionDetected) { // Only notify on state change from no motion to motion
+                motionDetected = true;
+                DeviceEvent event = recordMotionEvent(false);
+                device.getStatus().setAttribute("motionSensor", "true");
+                device.notifyObservers(event);
+            }
+        } else {
+            if (motionDetected) { // Only notify on state change from motion to no motion
+                motionDetected = false;
+                device.getStatus().setAttribute("motionSensor", "false");
+                device.notifyObservers(DeviceEvent.of(device, EventType.MOTION_STOPPED));
+            }
+        }
+    }
+
+    public void simulateMotion(boolean detected) {
+        if (motionDetected != detected) {
+            motionDetected = detected;
+            device.getStatus().setAttribute("motionSensor", String.valueOf(detected));
+
+            if (detected) {
+                device.notifyObservers(recordMotionEvent(true));
+            } else {
+                device.notifyObservers(DeviceEvent.of(device, EventType.MOTION_STOPPED));
+            }
+        }
+    }
+
+    // The value of the recorded event tells simulated motion (1) from detected motion (0)
+    private DeviceEvent recordMotionEvent(boolean simulated) {
+        DeviceEvent event = DeviceEvent.of(device, EventType.MOTION_DETECTED, simulated ? 1L : 0L);
+        motionEvents.append(event);
+        device.getStatus().setAttribute("motionEventsCount", String.valueOf(motionEvents.size()));
+        return event;
+    }
+
+    public List<String> getMotionEvents() {
+        List<String> entries = new ArrayList<>(motionEvents.size());
+        motionEvents.forEach(record -> entries.add(DeviceEvent.formatTimestamp(record.getTimestampNanos())
+                + " - " + (record.getLongValue() != 0 ? "Motion simulated" : "Motion detected")));
+        return entries;
+    }
+}
@@ -0,0 +1,35 @@
+package devices.components;
+
+import core.CommandHandler;
+import core.CommandType;
+import core.DeviceComponent;
+import core.SmartDevice;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Common part of the sensor components: remembers the device the sensor is attached to,
+// which its readings are recorded on and its events are raised from
+public abstract class SensorComponent implements DeviceComponent {
+
+    protected SmartDevice device;
+
+    @Override
+    public final Map<CommandType, CommandHandler> attach(SmartDevice device) {
+        if (this.device != null) {
+            throw new IllegalStateException(getCapability() + " component already attached to " + this.device.getName());
+        }
+        this.device = device;
+        Map<CommandType, CommandHandler> handlers = new EnumMap<>(CommandType.class);
+        onAttach(handlers);
+        return handlers;
+    }
+
+    // Publishes the sensor's status attributes and adds its command handlers
+    protected abstract void onAttach(Map<CommandType, CommandHandler> handlers);
+
+    // The device the sensor is attached to, or null before it is attached
+    public SmartDevice getDevice() {
+        return device;
+    }
+}
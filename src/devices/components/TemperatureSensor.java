@@ -0,0 +1,96 @@
+package devices.components;
+
+import core.Capability;
+import core.CommandHandler;
+import core.CommandType;
+import core.DeviceEvent;
+import core.EventType;
+
+import java.util.Map;
+import java.util.Random;
+
+public class TemperatureSensor extends SensorComponent {
+
+    private double currentTemperature;
+    private double warningThreshold;
+    private Random random;
+
+    public TemperatureSensor() {
+        this.random = new Random();
+        this.currentTemperature = 22.0; // Default starting temperature
+        this.warningThreshold = 40.0; // Default warning threshold
+    }
+
+    @Override
+    public Capability getCapability() {
+        return Capability.TEMPERATURE_SENSOR;
+    }
+
+    @Override
+    protected void onAttach(Map<CommandType, CommandHandler> handlers) {
+        // Add temperature to status
+        device.getStatus().setAttribute("temperatureSensor", String.valueOf(currentTemperature));
+        device.getStatus().setAttribute("temperatureWarningThreshold", String.valueOf(warningThreshold));
+
+        handlers.put(CommandType.READ_TEMPERATURE, command -> readTemperature());
+        handlers.put(CommandType.SET_TEMPERATURE, command -> {
+            if (command.hasArguments()) {
+                if (command.isValid()) {
+                    setTemperature(command.getDoubleValue());
+                } else {
+                    System.out.println("Invalid temperature parameter");
+                }
+            }
+        });
+        handlers.put(CommandType.SET_THRESHOLD, command -> {
+            if (command.hasArguments()) {
+                if (command.isValid()) {
+                    setWarningThreshold(command.getDoubleValue());
+                } else {
+                    System.out.println("Invalid threshold parameter");
+                }
+            }
+        });
+    }
+
+    public double getCurrentTemperature() {
+        return currentTemperature;
+    }
+
+    public void setWarningThreshold(double threshold) {
+        this.warningThreshold = threshold;
+        device.getStatus().setAttribute("temperatureWarningThreshold", String.valueOf(warningThreshold));
+    }
+
+    // Simulate a temperature reading
+    public void readTemperature() {
+        // Simulate a temperature reading with small random changes
+        double change = (random.nextDouble() - 0.5) * 2.0; // Change between -1 and +1
+        currentTemperature += change;
+        currentTemperature = Math.round(currentTemperature * 10.0) / 10.0; // Round to 1 decimal place
+
+        device.getStatus().setAttribute("temperatureSensor", String.valueOf(currentTemperature));
+
+        System.out.println(device.getName() + " temperature sensor reading: " + currentTemperature + "°C");
+
+        // Check if temperature exceeds warning threshold
+        if (currentTemperature > warningThreshold) {
+            device.notifyObservers(DeviceEvent.of(device, EventType.TEMPERATURE_WARNING,
+                    currentTemperature, warningThreshold));
+        }
+    }
+
+    // Simulate a specific temperature for testing
+    public void setTemperature(double temperature) {
+        this.currentTemperature = temperature;
+        device.getStatus().setAttribute("temperatureSensor", String.valueOf(currentTemperature));
+
+        System.out.println(device.getName() + " temperature set to: " + currentTemperature + "°C");
+
+        // Check if temperature exceeds warning threshold
+        if (currentTemperature > warningThreshold) {
+            device.notifyObservers(DeviceEvent.of(device, EventType.TEMPERATURE_WARNING,
+                    currentTemperature, warningThreshold));
+        }
+    }
+}
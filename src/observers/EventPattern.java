@@ -0,0 +1,59 @@
+package observers;
+
+import core.DeviceEvent;
+import core.EventType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+// The events one step of a security rule reacts to: any of the given event types,
+// optionally only from the named devices and only while a condition holds when the event
+// arrives (e.g. the camera being in AWAY mode).
+public final class EventPattern {
+
+    private final Set<EventType> types;
+    private final Set<String> deviceNames;
+    private final Predicate<DeviceEvent> condition;
+
+    private EventPattern(Set<EventType> types, Set<String> deviceNames, Predicate<DeviceEvent> condition) {
+        this.types = types;
+        this.deviceNames = deviceNames;
+        this.condition = condition;
+    }
+
+    public static EventPattern of(EventType... types) {
+        if (types.length == 0) {
+            throw new IllegalArgumentException("A pattern needs at least one event type");
+        }
+        return new EventPattern(Collections.unmodifiableSet(new HashSet<>(Arrays.asList(types))),
+                Collections.emptySet(), null);
+    }
+
+    // Copy restricted to events from the named devices
+    public EventPattern fromDevices(String... names) {
+        return new EventPattern(types, Collections.unmodifiableSet(new HashSet<>(Arrays.asList(names))), condition);
+    }
+
+    // Copy that also requires the condition; conditions added this way must all hold
+    public EventPattern when(Predicate<DeviceEvent> extra) {
+        return new EventPattern(types, deviceNames, condition == null ? extra : condition.and(extra));
+    }
+
+    public Set<EventType> getTypes() {
+        return types;
+    }
+
+    public boolean matches(DeviceEvent event) {
+        return types.contains(event.getType())
+                && (deviceNames.isEmpty() || deviceNames.contains(event.getDeviceName()))
+                && (condition == null || condition.test(event));
+    }
+
+    @Override
+    public String toString() {
+        return types + (deviceNames.isEmpty() ? "" : " from " + deviceNames) + (condition == null ? "" : " (conditional)");
+    }
+}
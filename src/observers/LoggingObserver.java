@@ -1,63 +1,120 @@
 package observers;
 
+import core.DeviceEvent;
 import core.DeviceObserver;
+import core.EventHistory;
 import core.SmartDevice;
 
-import java.io.FileWriter;
+import core.services.AsyncLogWriter;
+import core.services.BinaryEventLog;
+import core.services.LogRotationPolicy;
+
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Paths;
 
 public class LoggingObserver implements DeviceObserver {
 
     private String logFilePath;
-    private List<String> inMemoryLog;
-    private int maxInMemoryEntries;
+    // Keeps the log file open and writes entries in the background
+    private AsyncLogWriter logWriter;
+    // Queryable binary copy of the log, see EventLogReader
+    private volatile BinaryEventLog binaryLog;
+    private EventHistory inMemoryLog;
 
     public LoggingObserver() {
         this.logFilePath = null; // In-memory only
-        this.inMemoryLog = new ArrayList<>();
-        this.maxInMemoryEntries = 100; // Default max entries
+        this.inMemoryLog = new EventHistory(100); // Default max entries
     }
 
     public LoggingObserver(String logFilePath) {
+        this(logFilePath, AsyncLogWriter.FsyncPolicy.NEVER);
+    }
+
+    public LoggingObserver(String logFilePath, AsyncLogWriter.FsyncPolicy fsyncPolicy) {
+        this(logFilePath, fsyncPolicy, LogRotationPolicy.none());
+    }
+
+    // Splits the file into segments, e.g.
+    // LogRotationPolicy.segments(16 << 20, 1, TimeUnit.DAYS).withCompression().withRetentionBytes(1L << 30)
+    public LoggingObserver(String logFilePath, AsyncLogWriter.FsyncPolicy fsyncPolicy, LogRotationPolicy rotation) {
         this.logFilePath = logFilePath;
-        this.inMemoryLog = new ArrayList<>();
-        this.maxInMemoryEntries = 100; // Default max entries
+        this.inMemoryLog = new EventHistory(100); // Default max entries
+        try {
+            this.logWriter = new AsyncLogWriter(Paths.get(logFilePath), 64 * 1024, 200, fsyncPolicy, rotation);
+        } catch (IOException e) {
+            System.err.println("Error opening log file: " + e.getMessage());
+            this.logFilePath = null; // Fall back to in-memory only
+        }
     }
 
     @Override
     public void update(SmartDevice device, String event, String message) {
-        LocalDateTime now = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        String timestamp = now.format(formatter);
+        onEvent(DeviceEvent.withMessage(device, event, message));
+    }
 
-        String logEntry = timestamp + " - " + device.getName() + " - " + event + " - " + message;
+    @Override
+    public void onEvent(DeviceEvent event) {
+        // Add to in-memory log; the oldest entry is overwritten once it is full
+        inMemoryLog.append(event);
+
+        // Write to file if configured; only buffered here, the writer thread does the I/O
+        if (logWriter != null) {
+            logWriter.writeLine(event.toString());
+        }
+        if (binaryLog != null) {
+            binaryLog.append(event);
+        }
+    }
 
-        // Add to in-memory log
-        inMemoryLog.add(logEntry);
-        if (inMemoryLog.size() > maxInMemoryEntries) {
-            inMemoryLog.remove(0); // Remove oldest entry
+    // Also records every event in a binary log that can be queried by time, device and type
+    public void enableBinaryLog(String path) {
+        try {
+            binaryLog = new BinaryEventLog(Paths.get(path));
+            System.out.println("Binary event log enabled: " + path);
+        } catch (IOException e) {
+            System.err.println("Error opening binary event log: " + e.getMessage());
         }
+    }
 
-        // Write to file if configured
-        if (logFilePath != null) {
-            try (PrintWriter out = new PrintWriter(new FileWriter(logFilePath, true))) {
-                out.println(logEntry);
+    public String getLogFilePath() {
+        return logFilePath;
+    }
+
+    // Waits until every entry logged so far is in the file(s)
+    public void flush() {
+        if (logWriter != null) {
+            logWriter.flush();
+        }
+        if (binaryLog != null) {
+            try {
+                binaryLog.flush();
+            } catch (IOException e) {
+                System.err.println("Error writing binary event log: " + e.getMessage());
+            }
+        }
+    }
+
+    // Writes the remaining entries and closes the log file(s)
+    public void close() {
+        if (logWriter != null) {
+            try {
+                logWriter.close();
+            } catch (IOException e) {
+                System.err.println("Error closing log file: " + e.getMessage());
+            }
+        }
+        if (binaryLog != null) {
+            try {
+                binaryLog.close();
             } catch (IOException e) {
-                System.err.println("Error writing to log file: " + e.getMessage());
+                System.err.println("Error closing binary event log: " + e.getMessage());
             }
         }
     }
 
     public void displayLog() {
         System.out.println("\n===== DEVICE EVENT LOG =====");
-        for (String entry : inMemoryLog) {
-            System.out.println(entry);
-        }
+        inMemoryLog.forEach(entry -> System.out.println(entry.format()));
         System.out.println("============================\n");
     }
 
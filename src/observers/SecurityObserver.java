@@ -1,30 +1,40 @@
 package observers;
 
+import core.DeviceEvent;
 import core.DeviceObserver;
+import core.EventHistory;
+import core.EventType;
 import core.SmartDevice;
-import core.SmartHomeHub;
-import core.User;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class SecurityObserver implements DeviceObserver {
 
-    private boolean securityEnabled;
-    private List<String> securityEvents;
-    private List<String> criticalEventTypes;
+    private volatile boolean securityEnabled;
+    private EventHistory securityEvents;
+    private Set<String> criticalEventTypes;
+    // Temporal rules by the event types that can advance them, so an event only reaches its rules
+    private final Map<EventType, List<SecurityRule>> rulesByType;
+    private final List<SecurityRule> rules;
 
     public SecurityObserver() {
         this.securityEnabled = true;
-        this.securityEvents = new ArrayList<>();
+        this.securityEvents = new EventHistory(50); // Keep only last 50 events
 
         // Define critical event types that require immediate attention
-        this.criticalEventTypes = new ArrayList<>();
+        // Observers are called from the command workers of several devices at once
+        this.criticalEventTypes = ConcurrentHashMap.newKeySet();
         criticalEventTypes.add("MOTION_DETECTED");
         criticalEventTypes.add("SECURITY_ALERT");
         criticalEventTypes.add("TEMPERATURE_WARNING");
+
+        this.rulesByType = new ConcurrentHashMap<>();
+        this.rules = new CopyOnWriteArrayList<>();
     }
 
     public void enableSecurity() {
@@ -39,50 +49,95 @@ public class SecurityObserver implements DeviceObserver {
 
     @Override
     public void update(SmartDevice device, String event, String message) {
+        onEvent(DeviceEvent.withMessage(device, event, message));
+    }
+
+    @Override
+    public void onEvent(DeviceEvent event) {
         if (!securityEnabled) {
             return;
         }
 
-        LocalDateTime now = LocalDateTime.now();
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-        String timestamp = now.format(formatter);
+        securityEvents.append(event);
 
-        String securityEntry = timestamp + " - " + device.getName() + " - " + event + " - " + message;
-        securityEvents.add(securityEntry);
+        // Check if this is a critical event
+        if (isCriticalEvent(event.getTypeName())) {
+            System.out.println("\n!!! SECURITY ALERT: " + event + " !!!\n");
 
-        // Keep only last 50 events
-        if (securityEvents.size() > 50) {
-            securityEvents.remove(0);
+            // Notify the hub the device belongs to about critical events
+            SmartDevice device = event.getSource();
+            device.getEventSink().broadcast(DeviceEvent.withMessage(
+                    device,
+                    EventType.CRITICAL_SECURITY_ALERT,
+                    "Critical security event detected: " + event.getTypeName() + " - " + event.getMessage()
+            ));
         }
 
-        // Check if this is a critical event
-        if (isCriticalEvent(event)) {
-            System.out.println("\n!!! SECURITY ALERT: " + securityEntry + " !!!\n");
+        // Advance only the rules this event type can move
+        List<SecurityRule> candidates = rulesByType.get(event.getType());
+        if (candidates != null) {
+            for (SecurityRule rule : candidates) {
+                String match = rule.offer(event);
+                if (match != null) {
+                    raiseRuleAlert(event, rule, match);
+                }
+            }
+        }
+    }
 
-            // Notify the hub about critical events
-            SmartHomeHub.getInstance().broadcastNotification(
+    private void raiseRuleAlert(DeviceEvent event, SecurityRule rule, String match) {
+        System.out.println("\n!!! SECURITY RULE " + rule.getName() + ": " + match + " !!!\n");
+        SmartDevice device = event.getSource();
+        if (device != null) {
+            device.getEventSink().broadcast(DeviceEvent.withMessage(
                     device,
-                    "CRITICAL_SECURITY_ALERT",
-                    "Critical security event detected: " + event + " - " + message
-            );
+                    EventType.CRITICAL_SECURITY_ALERT,
+                    "Security rule " + rule.getName() + " triggered: " + match
+            ));
         }
     }
 
+    public void addRule(SecurityRule rule) {
+        removeRule(rule.getName());
+        rules.add(rule);
+        for (EventType type : rule.getTriggerTypes()) {
+            rulesByType.computeIfAbsent(type, t -> new CopyOnWriteArrayList<>()).add(rule);
+        }
+        System.out.println("Added security rule " + rule);
+    }
+
+    public boolean removeRule(String name) {
+        for (SecurityRule rule : rules) {
+            if (rule.getName().equals(name) && rules.remove(rule)) {
+                for (EventType type : rule.getTriggerTypes()) {
+                    List<SecurityRule> typeRules = rulesByType.get(type);
+                    if (typeRules != null) {
+                        typeRules.remove(rule);
+                    }
+                }
+                System.out.println("Removed security rule " + name);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<SecurityRule> getRules() {
+        return new ArrayList<>(rules);
+    }
+
     private boolean isCriticalEvent(String eventType) {
         return criticalEventTypes.contains(eventType);
     }
 
     public void displaySecurityEvents() {
         System.out.println("\n===== SECURITY EVENT LOG =====");
-        for (String entry : securityEvents) {
-            System.out.println(entry);
-        }
+        securityEvents.forEach(entry -> System.out.println(entry.format()));
         System.out.println("=============================\n");
     }
 
     public void addCriticalEventType(String eventType) {
-        if (!criticalEventTypes.contains(eventType)) {
-            criticalEventTypes.add(eventType);
+        if (criticalEventTypes.add(eventType)) {
             System.out.println("Added " + eventType + " to critical events list");
         }
     }
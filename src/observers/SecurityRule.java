@@ -0,0 +1,183 @@
+package observers;
+
+import core.DeviceEvent;
+import core.EventType;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// A temporal security rule, evaluated incrementally as events arrive: each rule keeps only
+// the few timestamps it needs instead of rescanning past events. A rule that fires starts
+// over, so one burst raises one alert. Windows are measured on the events' monotonic clock,
+// so wall-clock changes do not stretch or shrink them, and events may arrive slightly out
+// of order from different publisher threads.
+public abstract class SecurityRule {
+
+    private final String name;
+    protected final long windowNanos;
+    // Guarded by this rule
+    private long firedCount;
+
+    protected SecurityRule(String name, long window, TimeUnit unit) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Rule window must be positive");
+        }
+        this.name = name;
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    // Fires on the count-th matching event within the window, e.g. 5 MOTION_DETECTED in a minute
+    public static SecurityRule threshold(String name, EventPattern pattern, int count, long window, TimeUnit unit) {
+        return new ThresholdRule(name, pattern, count, window, unit);
+    }
+
+    // Fires when an event matching second follows one matching first within the window
+    public static SecurityRule sequence(String name, EventPattern first, EventPattern second,
+                                        long window, TimeUnit unit) {
+        return new SequenceRule(name, first, second, window, unit);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized long getFiredCount() {
+        return firedCount;
+    }
+
+    // Event types that can advance the rule; the observer only offers it these
+    public abstract Set<EventType> getTriggerTypes();
+
+    // Returns a description of the match if the event completes the rule, otherwise null
+    public final synchronized String offer(DeviceEvent event) {
+        String match = advance(event);
+        if (match != null) {
+            firedCount++;
+        }
+        return match;
+    }
+
+    // Called while holding the rule
+    protected abstract String advance(DeviceEvent event);
+
+    protected String describeWindow() {
+        long millis = TimeUnit.NANOSECONDS.toMillis(windowNanos);
+        return millis % 1000 == 0 ? millis / 1000 + "s" : millis + "ms";
+    }
+
+    private static final class ThresholdRule extends SecurityRule {
+        private final EventPattern pattern;
+        // Times of the matches within the window of the latest one, oldest first
+        private final long[] times;
+        private int size;
+        private long latestNanos;
+
+        ThresholdRule(String name, EventPattern pattern, int count, long window, TimeUnit unit) {
+            super(name, window, unit);
+            if (count < 1) {
+                throw new IllegalArgumentException("Threshold count must be positive");
+            }
+            this.pattern = pattern;
+            this.times = new long[count];
+        }
+
+        @Override
+        public Set<EventType> getTriggerTypes() {
+            return pattern.getTypes();
+        }
+
+        @Override
+        protected String advance(DeviceEvent event) {
+            if (!pattern.matches(event)) {
+                return null;
+            }
+            long now = event.getMonotonicNanos();
+            if (size == 0 || now - latestNanos > 0) {
+                latestNanos = now;
+            }
+            // Drop matches that fell out of the window, then file this one in time order; a
+            // late arrival already outside the window is ignored
+            int expired = 0;
+            while (expired < size && latestNanos - times[expired] > windowNanos) {
+                expired++;
+            }
+            if (expired > 0) {
+                System.arraycopy(times, expired, times, 0, size - expired);
+                size -= expired;
+            }
+            if (latestNanos - now > windowNanos) {
+                return null;
+            }
+            int slot = size;
+            while (slot > 0 && times[slot - 1] - now > 0) {
+                times[slot] = times[slot - 1];
+                slot--;
+            }
+            times[slot] = now;
+            size++;
+            if (size < times.length) {
+                return null;
+            }
+            size = 0;
+            return times.length + " x " + pattern + " within " + describeWindow();
+        }
+
+        @Override
+        public String toString() {
+            return getName() + ": " + times.length + " x " + pattern + " within " + describeWindow();
+        }
+    }
+
+    private static final class SequenceRule extends SecurityRule {
+        private final EventPattern first;
+        private final EventPattern second;
+        private final Set<EventType> triggerTypes;
+        // Time of the latest event matching first; firstSeen is null while waiting for one
+        private long firstSeenNanos;
+        private String firstSeen;
+
+        SequenceRule(String name, EventPattern first, EventPattern second, long window, TimeUnit unit) {
+            super(name, window, unit);
+            this.first = first;
+            this.second = second;
+            Set<EventType> types = new HashSet<>(first.getTypes());
+            types.addAll(second.getTypes());
+            this.triggerTypes = types;
+        }
+
+        @Override
+        public Set<EventType> getTriggerTypes() {
+            return triggerTypes;
+        }
+
+        @Override
+        protected String advance(DeviceEvent event) {
+            long now = event.getMonotonicNanos();
+            if (firstSeen != null && second.matches(event)) {
+                long elapsed = now - firstSeenNanos;
+                if (elapsed >= 0 && elapsed <= windowNanos) {
+                    String match = firstSeen + " followed by " + event.getDeviceName() + " " + event.getTypeName()
+                            + " after " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms";
+                    firstSeen = null;
+                    return match;
+                }
+                // A late arrival from before the first step leaves the window open
+                if (elapsed > windowNanos) {
+                    firstSeen = null;
+                }
+            }
+            // The latest match of the first step opens the window
+            if (first.matches(event) && (firstSeen == null || now - firstSeenNanos > 0)) {
+                firstSeenNanos = now;
+                firstSeen = event.getDeviceName() + " " + event.getTypeName();
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return getName() + ": " + first + " then " + second + " within " + describeWindow();
+        }
+    }
+}
@@ -9,6 +9,8 @@ import java.time.format.DateTimeParseException;
 
 public class ScheduledControlStrategy implements ControlStrategy {
 
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
     private LocalTime onTime;
     private LocalTime offTime;
 
@@ -25,8 +27,7 @@ public class ScheduledControlStrategy implements ControlStrategy {
 
     @Override
     public String getName() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-        return "Scheduled Control (ON: " + onTime.format(formatter) + ", OFF: " + offTime.format(formatter) + ")";
+        return "Scheduled Control (ON: " + onTime.format(TIME_FORMATTER) + ", OFF: " + offTime.format(TIME_FORMATTER) + ")";
     }
 
     public void setOnTime(LocalTime onTime) {